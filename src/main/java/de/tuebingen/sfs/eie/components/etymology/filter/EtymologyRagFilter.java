@@ -15,6 +15,7 @@
  */
 package de.tuebingen.sfs.eie.components.etymology.filter;
 
+import de.tuebingen.sfs.eie.components.etymology.problems.EtymologyResultStore;
 import de.tuebingen.sfs.psl.engine.RagFilter;
 import de.tuebingen.sfs.psl.util.color.HslColor;
 import de.tuebingen.sfs.psl.util.data.RankingEntry;
@@ -28,7 +29,12 @@ import java.util.TreeSet;
 
 public class EtymologyRagFilter extends RagFilter {
 
-	static String[] staticPreds = new String[] { "Xinh", "Xloa", "Xsth", "Xdst", "#equal", "#notequal" };
+	static String[] staticPreds = new String[] { "Xinh", "Xloa", "Xsth", "Xdst", "#equal", "#notequal",
+			"#nonsymmetric" };
+	static String[] eetyPreds = new String[] { "Einh", "Eloa", "Eunk" };
+
+	// null if the belief values only exist as a map
+	private EtymologyResultStore results = null;
 
 	public EtymologyRagFilter() {
 		super();
@@ -41,6 +47,12 @@ public class EtymologyRagFilter extends RagFilter {
 		initializePreventUserInteraction();
 	}
 
+	// The belief values are the string-keyed view of the result store, the Eety lookups use the store directly.
+	public EtymologyRagFilter(EtymologyResultStore results, Set<String> fixedAtoms, Set<String> hiddenAtoms) {
+		this(results.asMap(), fixedAtoms, hiddenAtoms);
+		this.results = results;
+	}
+
 	private void initializeIgnoreInGui() {
 		for (String pred : staticPreds) {
 			ignoreInGui.add(pred);
@@ -68,6 +80,21 @@ public class EtymologyRagFilter extends RagFilter {
 
 	public List<RankingEntry<String>> getEetyForArgument(String argument) {
 		List<RankingEntry<String>> entries = new ArrayList<>();
+		if (results != null) {
+			for (String pred : eetyPreds) {
+				EtymologyResultStore.Column column = results.getColumn(pred);
+				if (column == null) {
+					continue;
+				}
+				for (int row = column.firstRow(argument); row < column.endRow(argument); row++) {
+					if (column.contains(row)) {
+						entries.add(new RankingEntry<String>(column.print(row), column.value(row)));
+					}
+				}
+			}
+			Collections.sort(entries, Collections.reverseOrder());
+			return entries;
+		}
 		for (String atom : beliefValues.keySet()) {
 			if (atom.startsWith("Eloa(" + argument) || atom.startsWith("Einh(" + argument)
 					|| atom.startsWith("Eunk(" + argument)) {
@@ -84,9 +111,20 @@ public class EtymologyRagFilter extends RagFilter {
 
 	public List<RankingEntry<String>> getHighestEetyPerArgument() {
 		Set<String> arguments = new TreeSet<>();
-		for (String atom : beliefValues.keySet()) {
-			if (atom.startsWith("Eloa(") || atom.startsWith("Einh(") || atom.startsWith("Eunk(")) {
-				arguments.add(atom.replace(")", "").split("\\(")[1].split(",")[0]);
+		if (results != null) {
+			for (String pred : eetyPreds) {
+				EtymologyResultStore.Column column = results.getColumn(pred);
+				for (int row = 0; column != null && row < column.size(); row++) {
+					if (column.contains(row)) {
+						arguments.add(column.arg(row, 0));
+					}
+				}
+			}
+		} else {
+			for (String atom : beliefValues.keySet()) {
+				if (atom.startsWith("Eloa(") || atom.startsWith("Einh(") || atom.startsWith("Eunk(")) {
+					arguments.add(atom.replace(")", "").split("\\(")[1].split(",")[0]);
+				}
 			}
 		}
 		List<RankingEntry<String>> atoms = new ArrayList<>();
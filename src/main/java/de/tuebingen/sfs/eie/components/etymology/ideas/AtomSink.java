@@ -0,0 +1,40 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.ideas;
+
+import java.util.List;
+
+// Where the idea generator writes its atoms to. The default writes into the etymology problem
+// (see ProblemAtomSink); other sinks can be plugged in for dry runs or for inspecting the generated atoms.
+public interface AtomSink {
+
+    void addObservation(String pred, double value, String... args);
+
+    // initialValue: the value the solver starts from, NaN for the default initialization
+    void addTarget(String pred, double initialValue, String... args);
+
+    void addFixedAtom(String pred, String... args);
+
+    void addHiddenAtom(String pred, String... args);
+
+    // Removes atoms written during an earlier run (incremental idea generation).
+    void removeAtoms(String pred, List<String[]> argTuples);
+
+    // Called once all atoms of a run have been written.
+    default void flush() {
+    }
+
+}
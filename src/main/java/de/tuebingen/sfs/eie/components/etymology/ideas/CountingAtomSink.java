@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.ideas;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Dry run: only counts the atoms per predicate without creating them.
+public class CountingAtomSink implements AtomSink {
+
+    private final Map<String, Integer> observations = new TreeMap<>();
+    private final Map<String, Integer> targets = new TreeMap<>();
+    private int nFixed = 0;
+    private int nHidden = 0;
+    private int nRemoved = 0;
+
+    @Override
+    public void addObservation(String pred, double value, String... args) {
+        observations.merge(pred, 1, Integer::sum);
+    }
+
+    @Override
+    public void addTarget(String pred, double initialValue, String... args) {
+        targets.merge(pred, 1, Integer::sum);
+    }
+
+    @Override
+    public void addFixedAtom(String pred, String... args) {
+        nFixed++;
+    }
+
+    @Override
+    public void addHiddenAtom(String pred, String... args) {
+        nHidden++;
+    }
+
+    @Override
+    public void removeAtoms(String pred, List<String[]> argTuples) {
+        nRemoved += argTuples.size();
+    }
+
+    public int getObservationCount(String pred) {
+        return observations.getOrDefault(pred, 0);
+    }
+
+    public int getTargetCount(String pred) {
+        return targets.getOrDefault(pred, 0);
+    }
+
+    public int getTotalCount() {
+        return observations.values().stream().mapToInt(Integer::intValue).sum() +
+                targets.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    public void print(PrintStream out) {
+        out.println("Observations: " + observations);
+        out.println("Targets: " + targets);
+        out.println("Fixed: " + nFixed + ", hidden: " + nHidden + ", removed: " + nRemoved);
+    }
+
+}
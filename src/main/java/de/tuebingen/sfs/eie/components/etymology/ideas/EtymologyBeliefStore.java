@@ -0,0 +1,30 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.ideas;
+
+// Belief values for Einh/Eloa/Eunk atoms from earlier inferences, e.g. the ones stored in the etymological theory.
+// - Confirmed beliefs are added to the problem as fixed observations.
+// - Beliefs that were merely inferred before are used as initial values for the corresponding target atoms
+//   (if warm starts are enabled), so that reruns over mostly unchanged data start close to the solution.
+public interface EtymologyBeliefStore {
+
+    // NaN if the belief hasn't been confirmed
+    double getConfirmedBelief(String pred, String... args);
+
+    // NaN if there is no belief value from an earlier inference
+    double getPreviousBelief(String pred, String... args);
+
+}
@@ -15,10 +15,15 @@
  */
 package de.tuebingen.sfs.eie.components.etymology.ideas;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 
 import de.tuebingen.sfs.eie.components.etymology.problems.EtymologyProblem;
 import de.tuebingen.sfs.eie.components.etymology.problems.EtymologyProblemConfig;
+import de.tuebingen.sfs.eie.components.etymology.problems.EtymologyResultStore;
+import de.tuebingen.sfs.eie.components.etymology.problems.EtymologyRuleSet;
 import de.tuebingen.sfs.eie.shared.core.EtymologicalTheory;
 import de.tuebingen.sfs.eie.shared.core.IndexedObjectStore;
 import de.tuebingen.sfs.eie.shared.core.LanguagePhylogeny;
@@ -40,6 +45,13 @@ public class EtymologyIdeaGenerator extends IdeaGenerator {
     private EtymologicalTheory theory;
     protected EtymologyProblemConfig config;
     protected InferenceLogger logger;
+    // The atoms of the current run
+    private GeneratedAtoms atoms;
+    // Beliefs from earlier inferences (optional; with warm starts, the results of the last inference for the same
+    // query are used by default)
+    private EtymologyBeliefStore beliefStore = null;
+    // null: write into the problem
+    private AtomSink atomSink = null;
 
     public EtymologyIdeaGenerator(EtymologyProblem problem, EtymologicalTheory theory) {
         super(problem);
@@ -54,16 +66,26 @@ public class EtymologyIdeaGenerator extends IdeaGenerator {
         logger.displayln("Finished setting up the Etymology Idea Generator.");
     }
 
+    public void setBeliefStore(EtymologyBeliefStore beliefStore) {
+        this.beliefStore = beliefStore;
+    }
+
+    public void setAtomSink(AtomSink atomSink) {
+        this.atomSink = atomSink;
+    }
+
     public void generateAtoms() {
+        atoms = new GeneratedAtoms();
         IndexedObjectStore objectStore = theory.getIndexedObjectStore();
         LanguagePhylogeny phylo = theory.getLanguagePhylogeny();
 
+        FormIndex formIndex = new FormIndex();
         Multimap<String, Form> langsToForms = new Multimap<>(CollectionType.SET);
         Set<Integer> homPegs = new HashSet<>();
         Set<String> conceptsInConfig = new HashSet<>();
         for (int formId : config.getFormIds()) { // TODO min 2 forms!
             String lang = objectStore.getLangForForm(formId);
-            langsToForms.put(lang, new Form(formId));
+            langsToForms.put(lang, formIndex.attested(formId));
             conceptsInConfig.addAll(objectStore.getConceptsForForm(formId));
             int peg = objectStore.getPegForFormIdIfRegistered(formId);
             if (peg > -1) {
@@ -76,34 +98,35 @@ public class EtymologyIdeaGenerator extends IdeaGenerator {
         }
 
         // Are there any languages missing?
-        List<String> langsGiven = new ArrayList<>(langsToForms.keySet());
-        Set<String> langsMissing = new HashSet<>();
-        String lca = phylo.lowestCommonAncestor(langsGiven);
-        if (lca.equals(LanguagePhylogeny.root)) {
-            Multimap<String, String> familyAncestorToLangs = new Multimap<>(CollectionType.SET);
-            for (String lang : langsGiven) {
-                familyAncestorToLangs.put(phylo.getPathFor(lang).get(0), lang);
+        PhylogenyIndex phyloIndex = PhylogenyIndex.forPhylogeny(phylo);
+        Set<String> langsGiven = new HashSet<>(langsToForms.keySet());
+        LanguageClosureCache closureCache = phyloIndex.getClosureCache(config.getLanguageClosureCacheSize());
+        LanguageClosureCache.Closure closure = closureCache == null ? null : closureCache.get(langsGiven);
+        if (closure == null) {
+            closure = getLanguageClosure(phylo, phyloIndex, langsGiven);
+            if (closureCache != null) {
+                closureCache.put(langsGiven, closure);
             }
-            // TODO warn user if there are no relevant contacts
-            getLangsForBranches(phylo, langsMissing, langsGiven, familyAncestorToLangs);
         } else {
-            // If there is a (non-root) common ancestor,
-            // add languages + word forms up to the lowest common ancestor.
-            addMissingLangsForBranch(phylo, lca, langsGiven, langsMissing, langsGiven);
+            systemLogger.trace("Reusing the language closure for " + langsGiven + ": " + closure.langsMissing);
+        }
+        if (closureCache != null) {
+            systemLogger.trace(closureCache.printStats());
         }
+        // (Copied since languages with attested proto forms are removed below.)
+        Set<String> langsMissing = new HashSet<>(closure.langsMissing);
 
         // Retrieve proto forms in same homologue sets, if available
-        List<Form> allForms = new ArrayList<>();
-        langsToForms.values().forEach(allForms::addAll);
+        langsToForms.values().forEach(forms -> forms.forEach(formIndex::add));
         for (int peg : homPegs) {
             for (int formId : objectStore.getFormsForPeg(peg)) {
-                Form form = new Form(formId);
-                if (allForms.contains(form)) {
+                Form form = formIndex.attested(formId);
+                if (formIndex.contains(form)) {
                     continue;
                 }
                 String lang = objectStore.getLangForForm(formId);
                 if (langsMissing.contains(lang)) {
-                    allForms.add(form);
+                    formIndex.add(form);
                     langsToForms.put(lang, form);
                     langsMissing.remove(lang);
                 }
@@ -113,18 +136,18 @@ public class EtymologyIdeaGenerator extends IdeaGenerator {
         List<String> concepts = new ArrayList<>(conceptsInConfig);
         Collections.sort(concepts);
         for (String lang : langsMissing) {
-            Form form = new Form(new HypotheticalForm(lang, concepts).toString());
+            Form form = formIndex.hypothetical(new HypotheticalForm(lang, concepts).toString());
             langsToForms.put(lang, form);
-            allForms.add(form);
+            formIndex.add(form);
         }
+        List<Form> allForms = formIndex.getForms();
 
         // Form atoms
-        // TODO check EtymologicalTheory to see if confirmed Einh/Eloa/Eunk belief values
-        // from previous inferences can be used here
+        // (Confirmed/earlier Einh/Eloa/Eunk belief values are applied in applyStoredBeliefs.)
         int maxDist = -1;
         for (String lang : langsToForms.keySet()) {
             for (Form form : langsToForms.get(lang)) {
-                pslProblem.addTarget("Eunk", form.toString());
+                atoms.addTarget("Eunk", form.toString());
 
                 if (phylo.hasIncomingInfluences(lang)) {
                     for (String contact : phylo.getIncomingInfluences(lang)) {
@@ -132,8 +155,8 @@ public class EtymologyIdeaGenerator extends IdeaGenerator {
                             continue;
                         }
                         for (Form contactForm : langsToForms.get(contact)) {
-                            pslProblem.addObservation("Xloa", 1.0, form.toString(), contactForm.toString());
-                            pslProblem.addTarget("Eloa", form.toString(), contactForm.toString());
+                            atoms.addObservation("Xloa", 1.0, form.toString(), contactForm.toString());
+                            atoms.addTarget("Eloa", form.toString(), contactForm.toString());
                             systemLogger.trace(
                                     "Observation: Xloa(" + form.prettyPrint() + ", " + contactForm.prettyPrint() +
                                             ") 1.0");
@@ -151,8 +174,8 @@ public class EtymologyIdeaGenerator extends IdeaGenerator {
                         lang + " <- " + parent + " " + langsToForms.containsKey(parent) + " " + langsToForms.keySet());
                 if (langsToForms.containsKey(parent)) {
                     for (Form parentForm : langsToForms.get(parent)) {
-                        pslProblem.addObservation("Xinh", 1.0, form.toString(), parentForm.toString());
-                        pslProblem.addTarget("Einh", form.toString(), parentForm.toString());
+                        atoms.addObservation("Xinh", 1.0, form.toString(), parentForm.toString());
+                        atoms.addTarget("Einh", form.toString(), parentForm.toString());
                         systemLogger.trace(
                                 "Observation: Xinh(" + form.prettyPrint() + ", " + parentForm.prettyPrint() +
                                         ") 1.0");
@@ -188,66 +211,395 @@ public class EtymologyIdeaGenerator extends IdeaGenerator {
 //            }
 //        }
 
-        PhoneticSimilarityHelper phonSim = new PhoneticSimilarityHelper(objectStore.getCorrModel(), theory);
         int nForms = allForms.size();
+        for (Form form : allForms) {
+            addAtomsForSingleForm(objectStore, form, homPegs);
+        }
+        checkCancelled();
+
+        // Compare phonetic forms.
+        // Whether a form can be compared (it has an ID and can be tokenized) is checked once per form, not per pair.
+        // The similarities for pairs of known forms are computed up front (in parallel),
+        // the atoms are then added in the same order as for a sequential comparison.
+        boolean[] comparable = new boolean[nForms];
+        int nComparable = 0;
+        for (int i = 0; i < nForms; i++) {
+            Form form = allForms.get(i);
+            if (form.hasId() && theory.tokenize(form.id) != null) {
+                comparable[i] = true;
+                nComparable++;
+            }
+        }
+        int nKnownPairs = nComparable * (nComparable - 1) / 2;
+        int[] formIdx1 = new int[nKnownPairs];
+        int[] formIdx2 = new int[nKnownPairs];
+        int[] formIds1 = new int[nKnownPairs];
+        int[] formIds2 = new int[nKnownPairs];
+        int pairIdx = 0;
         for (int i = 0; i < nForms - 1; i++) {
-            Form formI = allForms.get(i);
-            addAtomsForSingleForm(objectStore, formI, homPegs);
+            if (!comparable[i]) {
+                continue;
+            }
+            for (int j = i + 1; j < nForms; j++) {
+                if (comparable[j]) {
+                    formIdx1[pairIdx] = i;
+                    formIdx2[pairIdx] = j;
+                    formIds1[pairIdx] = allForms.get(i).id;
+                    formIds2[pairIdx] = allForms.get(j).id;
+                    pairIdx++;
+                }
+            }
+        }
+        PhoneticSimilarityCache simCache = getSimilarityCache(objectStore);
+        PhoneticSimilarityStage simStage = new PhoneticSimilarityStage(config.getSimilarityThreads(),
+                () -> new PhoneticSimilarityHelper(objectStore.getCorrModel(), theory), simCache,
+                getSimilarityMatrix());
+        double[] sims = simStage.similarities(formIds1, formIds2);
+        checkCancelled();
+        if (simCache != null) {
+            logger.displayln(simCache.printStats());
+            if (config.getSimilarityCacheFile() != null && config.getCorrModelVersion() != null) {
+                simCache.save(Path.of(config.getSimilarityCacheFile()));
+            }
+        }
 
-            // Compare phonetic forms.
+        // Optionally only keep Fsim atoms for plausible pairs (plus the ones the tree structure requires).
+        FsimCandidateSelector candidateSelector = new FsimCandidateSelector(config.getFsimTopK(),
+                config.getFsimMinSimilarity());
+        boolean[] keepKnown = candidateSelector.select(nForms, formIdx1, formIdx2, sims);
+        Map<Form, String> formsToLangs = new IdentityHashMap<>();
+        for (String lang : langsToForms.keySet()) {
+            for (Form form : langsToForms.get(lang)) {
+                formsToLangs.put(form, lang);
+            }
+        }
+        // Union-find over the forms: kept pairs end up in the same group. The groups are then closed under the
+        // rule heads (see closeUnderRuleHeads), and Fsim atoms are added for all pairs within a group.
+        int[] groups = new int[nForms];
+        for (int i = 0; i < nForms; i++) {
+            groups[i] = i;
+        }
+        // (Counted for the log message, to see how much of the pruning the closure undoes.)
+        long nSelected = 0;
+        long nRequired = 0;
+        int p = 0;
+        for (int i = 0; i < nForms - 1; i++) {
             for (int j = i + 1; j < nForms; j++) {
-                Form formJ = allForms.get(j);
-                if (!formI.hasId() || !formJ.hasId() || theory.tokenize(formI.id) == null ||
-                        theory.tokenize(formJ.id) == null) {
-                    // If at least one of the forms is unknown, we have to infer the similarity scores.
-                    pslProblem.addTarget("Fsim", formI + "", formJ + "");
-                    pslProblem.addTarget("Fsim", formJ + "", formI + "");
-                    systemLogger.trace("Target: Fsim(" + formI.prettyPrint() + ", " + formJ.prettyPrint() + ")");
-                    systemLogger.trace("Target: Fsim(" + formJ.prettyPrint() + ", " + formI.prettyPrint() + ")");
+                int knownIdx = -1;
+                if (comparable[i] && comparable[j]) {
+                    knownIdx = p++;
+                }
+                boolean keep = knownIdx >= 0 ? keepKnown[knownIdx] : !candidateSelector.isActive();
+                if (keep) {
+                    nSelected++;
+                } else if (isRequiredForTree(phylo, phyloIndex, formsToLangs.get(allForms.get(i)),
+                        formsToLangs.get(allForms.get(j)))) {
+                    nRequired++;
                 } else {
-                    double fSim = phonSim.similarity(formI.id, formJ.id);
-                    pslProblem.addObservation("Fsim", fSim, formI + "", formJ + "");
-                    pslProblem.addObservation("Fsim", fSim, formJ + "", formI + "");
-                    ((EtymologyProblem) pslProblem).addFixedAtom("Fsim", formI + "", formJ + "");
-                    ((EtymologyProblem) pslProblem).addFixedAtom("Fsim", formJ + "", formI + "");
-                    systemLogger.trace("Observation: Fsim(" + formI.prettyPrint() + ", " + formJ.prettyPrint() +
-                            ") %.2f".formatted(fSim));
-                    systemLogger.trace("Observation: Fsim(" + formJ.prettyPrint() + ", " + formI.prettyPrint() +
-                            ") %.2f".formatted(fSim));
+                    continue;
                 }
+                union(groups, i, j);
             }
         }
-        addAtomsForSingleForm(objectStore, allForms.get(nForms - 1), homPegs);
+        if (candidateSelector.isActive()) {
+            closeUnderRuleHeads(groups, allForms, formsToLangs, langsToForms, phylo);
+        }
+
+        long nPruned = 0;
+        p = 0;
+        for (int i = 0; i < nForms - 1; i++) {
+            Form formI = allForms.get(i);
+            for (int j = i + 1; j < nForms; j++) {
+                Form formJ = allForms.get(j);
+                int knownIdx = -1;
+                if (comparable[i] && comparable[j]) {
+                    knownIdx = p++;
+                }
+                if (find(groups, i) != find(groups, j)) {
+                    nPruned++;
+                    continue;
+                }
+                // If at least one of the forms is unknown, we have to infer the similarity scores.
+                addFsimAtoms(formI, formJ, knownIdx >= 0 ? sims[knownIdx] : Double.NaN);
+            }
+        }
+
+        if (candidateSelector.isActive()) {
+            long nPairs = (long) nForms * (nForms - 1) / 2;
+            long nKept = nPairs - nPruned;
+            logger.displayln("Fsim candidate selection: kept " + nKept + " of " + nPairs + " form pairs (selected "
+                    + nSelected + ", required by the tree " + nRequired + ", added for the rule heads "
+                    + (nKept - nSelected - nRequired) + "; pruned " + nPruned + ").");
+        }
+
+        applyStoredBeliefs();
+        checkCancelled();
+        writeAtoms();
 
         if (systemLogger.isTraceEnabled()) {
             super.pslProblem.printAtomsToConsole();
         }
     }
 
-    private void getLangsForBranches(LanguagePhylogeny phylo, Set<String> langsMissing, List<String> langsGiven,
-                                     Multimap<String, String> familyAncestorToLangs) {
+    // The atoms only reach the problem in writeAtoms, so a cancelled run leaves nothing behind.
+    private static void checkCancelled() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Interrupted while generating atoms.");
+        }
+    }
+
+    // Confirmed beliefs turn the corresponding targets into fixed observations. With warm starts enabled,
+    // the other stored beliefs become the initial values of their targets.
+    private void applyStoredBeliefs() {
+        EtymologyBeliefStore beliefStore = this.beliefStore;
+        if (beliefStore == null && config.isWarmStart()) {
+            EtymologyResultStore previousResults = EtymologyProblem.getPreviousResults(pslProblem.getName());
+            if (previousResults != null) {
+                beliefStore = new MapBeliefStore(previousResults, Collections.emptySet());
+            }
+        }
+        if (beliefStore == null) {
+            return;
+        }
+        int nConfirmed = 0;
+        int nInitialized = 0;
+        for (GeneratedAtoms.Atom atom : atoms.getAtoms()) {
+            if (!atom.isTarget() || !(atom.pred.equals("Einh") || atom.pred.equals("Eloa") ||
+                    atom.pred.equals("Eunk"))) {
+                continue;
+            }
+            double belief = beliefStore.getConfirmedBelief(atom.pred, atom.args);
+            if (!Double.isNaN(belief)) {
+                atom.value = belief;
+                atom.fixed = true;
+                nConfirmed++;
+                systemLogger.trace("Confirmed: " + atom.pred + Arrays.toString(atom.args) + " " + belief);
+                continue;
+            }
+            if (config.isWarmStart()) {
+                belief = beliefStore.getPreviousBelief(atom.pred, atom.args);
+                if (!Double.isNaN(belief)) {
+                    atom.initialValue = belief;
+                    nInitialized++;
+                }
+            }
+        }
+        logger.displayln("Stored beliefs: " + nConfirmed + " confirmed atoms fixed, " + nInitialized +
+                " target atoms initialized with earlier values.");
+    }
+
+    // In incremental mode, only the atoms that differ from the previous run for the same query (problem ID)
+    // are added/removed.
+    // A custom atom sink doesn't write into the problem, so the run can't serve as the basis for incremental updates.
+    private void writeAtoms() {
+        EtymologyProblem problem = (EtymologyProblem) pslProblem;
+        if (atomSink != null) {
+            atoms.addTo(atomSink);
+            return;
+        }
+        AtomSink sink = new ProblemAtomSink(problem);
+        if (!config.isIncrementalIdeaGeneration()) {
+            atoms.addTo(sink);
+            GeneratedAtoms.setPreviousRun(problem, null);
+            return;
+        }
+        GeneratedAtoms previous = GeneratedAtoms.getPreviousRun(problem);
+        if (previous == null) {
+            atoms.addTo(sink);
+            logger.displayln("Incremental idea generation: added all " + atoms.size() + " atoms (no previous run).");
+        } else {
+            int[] delta = atoms.addDeltaTo(sink, previous, problem);
+            logger.displayln("Incremental idea generation: " + delta[0] + " atoms added, " + delta[1] +
+                    " removed, " + delta[2] + " changed (" + atoms.size() + " in total).");
+        }
+        GeneratedAtoms.setPreviousRun(problem, atoms);
+    }
+
+    // Adds Fsim(formI, formJ) and Fsim(formJ, formI), or, if the similarities are stored canonically,
+    // only the one whose arguments are in ascending order.
+    // The similarity is inferred if fSim is NaN.
+    private void addFsimAtoms(Form formI, Form formJ, double fSim) {
+        if (!config.isCanonicalFsim()) {
+            addFsimAtom(formI, formJ, fSim);
+            addFsimAtom(formJ, formI, fSim);
+        } else if (EtymologyRuleSet.inCanonicalOrder(formI.toString(), formJ.toString())) {
+            addFsimAtom(formI, formJ, fSim);
+        } else {
+            addFsimAtom(formJ, formI, fSim);
+        }
+    }
+
+    private void addFsimAtom(Form form1, Form form2, double fSim) {
+        if (Double.isNaN(fSim)) {
+            atoms.addTarget("Fsim", form1 + "", form2 + "");
+            systemLogger.trace("Target: Fsim(" + form1.prettyPrint() + ", " + form2.prettyPrint() + ")");
+        } else {
+            atoms.addObservation("Fsim", fSim, form1 + "", form2 + "");
+            atoms.addFixedAtom("Fsim", form1 + "", form2 + "");
+            systemLogger.trace("Observation: Fsim(" + form1.prettyPrint() + ", " + form2.prettyPrint() +
+                    ") %.2f".formatted(fSim));
+        }
+    }
+
+    // The rules with Fsim heads need the head atoms of all their groundings, since a missing head atom either
+    // counts as 0 (which can make the constraints infeasible) or can't be accessed at all:
+    // - FsimTransitivity: Fsim(X, Y) & Fsim(Y, Z) -> Fsim(X, Z), so every group of forms that are linked by
+    //   kept pairs needs all its pairs.
+    // - FsimToFsim: Fsim(X, Y) & Einh(X, W) & Einh(Y, Z) -> Fsim(W, Z), so the possible parents of the forms
+    //   in a group belong into one group as well.
+    // (EinhToFsim and EloaToFsim only need sister and contact pairs, which are always kept.)
+    // The pruning therefore only removes the pairs between groups that no kept pair links. Since the parent/child
+    // pairs are always kept, the forms of a language family (linked through parent and child languages with
+    // forms) end up in one group: within a family, nothing is pruned, only between families.
+    private void closeUnderRuleHeads(int[] groups, List<Form> allForms, Map<Form, String> formsToLangs,
+                                     Multimap<String, Form> langsToForms, LanguagePhylogeny phylo) {
+        Map<Form, Integer> formIndices = new IdentityHashMap<>();
+        for (int i = 0; i < allForms.size(); i++) {
+            formIndices.put(allForms.get(i), i);
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            // (The groups as of the start of this round, merges take effect in the next one.)
+            int[] roots = new int[groups.length];
+            int[] groupSizes = new int[groups.length];
+            for (int i = 0; i < groups.length; i++) {
+                roots[i] = find(groups, i);
+                groupSizes[roots[i]]++;
+            }
+            // Group -> a parent form of one of its members
+            Map<Integer, Integer> parentPerGroup = new HashMap<>();
+            for (int i = 0; i < groups.length; i++) {
+                int group = roots[i];
+                String parentLang = phylo.parents.get(formsToLangs.get(allForms.get(i)));
+                if (groupSizes[group] < 2 || parentLang == null || !langsToForms.containsKey(parentLang)) {
+                    continue;
+                }
+                for (Form parentForm : langsToForms.get(parentLang)) {
+                    int parentIdx = formIndices.get(parentForm);
+                    Integer otherParentIdx = parentPerGroup.putIfAbsent(group, parentIdx);
+                    if (otherParentIdx != null && union(groups, otherParentIdx, parentIdx)) {
+                        changed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private static int find(int[] groups, int i) {
+        while (groups[i] != i) {
+            groups[i] = groups[groups[i]];
+            i = groups[i];
+        }
+        return i;
+    }
+
+    // Returns false if the forms already were in the same group.
+    private static boolean union(int[] groups, int i, int j) {
+        int rootI = find(groups, i);
+        int rootJ = find(groups, j);
+        if (rootI == rootJ) {
+            return false;
+        }
+        groups[rootJ] = rootI;
+        return true;
+    }
+
+    // Pairs of forms whose similarity scores are needed by the rules that follow the tree structure:
+    // the endpoints of possible inheritance and borrowing relations, and sister forms (EinhToFsim).
+    private boolean isRequiredForTree(LanguagePhylogeny phylo, PhylogenyIndex phyloIndex, String lang1,
+                                      String lang2) {
+        String parent1 = phylo.parents.get(lang1);
+        String parent2 = phylo.parents.get(lang2);
+        if (lang2.equals(parent1) || lang1.equals(parent2)) {
+            return true;
+        }
+        if (parent1 != null && !parent1.equals(LanguageTree.root) && parent1.equals(parent2)) {
+            return true;
+        }
+        return phyloIndex.hasContact(lang1, lang2) || phyloIndex.hasContact(lang2, lang1);
+    }
+
+    private PhoneticSimilarityCache getSimilarityCache(IndexedObjectStore objectStore) {
+        if (config.getSimilarityCacheSize() <= 0) {
+            return null;
+        }
+        String modelVersion = config.getCorrModelVersion();
+        if (modelVersion == null) {
+            // Only valid for as long as this exact model object is in use.
+            return PhoneticSimilarityCache.shared(objectStore.getCorrModel(), config.getSimilarityCacheSize());
+        }
+        return PhoneticSimilarityCache.shared(modelVersion, config.getSimilarityCacheSize(),
+                config.getSimilarityCacheFile() == null ? null : Path.of(config.getSimilarityCacheFile()));
+    }
+
+    private SimilarityMatrixFile getSimilarityMatrix() {
+        if (config.getSimilarityMatrixFile() == null) {
+            return null;
+        }
+        try {
+            return SimilarityMatrixFile.open(Path.of(config.getSimilarityMatrixFile()), config.getCorrModelVersion());
+        } catch (IOException e) {
+            logger.displayln("Could not open the similarity matrix " + config.getSimilarityMatrixFile() +
+                    ", computing the similarities instead.");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private LanguageClosureCache.Closure getLanguageClosure(LanguagePhylogeny phylo, PhylogenyIndex phyloIndex,
+                                                            Set<String> langsGiven) {
+        Set<String> langsMissing = new HashSet<>();
+        List<String> branchLcas = new ArrayList<>();
+        List<String> contactAncestors = new ArrayList<>();
+        String lca = phyloIndex.lowestCommonAncestor(langsGiven);
+        if (lca.equals(LanguagePhylogeny.root)) {
+            Multimap<String, String> familyAncestorToLangs = new Multimap<>(CollectionType.SET);
+            for (String lang : langsGiven) {
+                int langIdx = phyloIndex.indexOf(lang);
+                int familyIdx = langIdx < 0 ? -1 : phyloIndex.getFamilyAncestor(langIdx);
+                familyAncestorToLangs.put(familyIdx < 0 ? phylo.getPathFor(lang).get(0) :
+                        phyloIndex.getLanguage(familyIdx), lang);
+            }
+            // TODO warn user if there are no relevant contacts
+            getLangsForBranches(phyloIndex, langsMissing, langsGiven, familyAncestorToLangs, branchLcas,
+                    contactAncestors);
+        } else {
+            // If there is a (non-root) common ancestor,
+            // add languages + word forms up to the lowest common ancestor.
+            addMissingLangsForBranch(phyloIndex, lca, langsGiven, langsMissing, langsGiven);
+        }
+        return new LanguageClosureCache.Closure(langsMissing, lca, branchLcas, contactAncestors);
+    }
+
+    private void getLangsForBranches(PhylogenyIndex phyloIndex, Set<String> langsMissing, Set<String> langsGiven,
+                                     Multimap<String, String> familyAncestorToLangs, List<String> branchLcas,
+                                     List<String> contactAncestorsPerBranch) {
         List<String>[] families = (ArrayList<String>[]) new ArrayList[familyAncestorToLangs.keySet().size()];
         String[] curLcas = new String[families.length];
         int i = 0;
         for (Collection<String> relatedLangs : familyAncestorToLangs.values()) {
-            String branchLca = phylo.lowestCommonAncestor(new ArrayList<>(relatedLangs));
+            String branchLca = phyloIndex.lowestCommonAncestor(relatedLangs);
             systemLogger.trace("Branch under " + branchLca);
             systemLogger.trace("- given: " + relatedLangs);
-            Set<String> newLangs = addMissingLangsForBranch(phylo, branchLca, relatedLangs, langsMissing, langsGiven);
+            Set<String> newLangs = addMissingLangsForBranch(phyloIndex, branchLca, relatedLangs, langsMissing,
+                    langsGiven);
             curLcas[i] = branchLca;
             families[i] = new ArrayList<>(relatedLangs);
             families[i].addAll(newLangs);
             i++;
         }
         // Try to connect the different branches via contact links and go up further in the tree if necessary
-        String[] contactAncestors = phylo.oldestContactLanguages(families, curLcas);
+        String[] contactAncestors = phyloIndex.oldestContactLanguages(families, curLcas);
+        branchLcas.addAll(Arrays.asList(curLcas));
+        contactAncestorsPerBranch.addAll(Arrays.asList(contactAncestors));
         for (i = 0; i < contactAncestors.length; i++) {
             if (contactAncestors[i] == null) {
                 systemLogger.trace("No relevant contact links involving the ancestors of " + curLcas[i]);
                 continue;
             }
             systemLogger.trace("Adding ancestors of " + curLcas[i]);
-            for (String anc : phylo.pathToRoot(curLcas[i])) {
+            for (String anc : phyloIndex.pathToRoot(curLcas[i])) {
                 langsMissing.add(anc);
                 systemLogger.trace("- " + anc);
                 if (contactAncestors[i].equals(anc)) {
@@ -257,14 +609,15 @@ public class EtymologyIdeaGenerator extends IdeaGenerator {
         }
     }
 
-    private Set<String> addMissingLangsForBranch(LanguagePhylogeny phylo, String lca, Collection<String> relatedLangs,
-                                                 Set<String> langsMissing, List<String> langsGiven) {
+    private Set<String> addMissingLangsForBranch(PhylogenyIndex phyloIndex, String lca,
+                                                 Collection<String> relatedLangs, Set<String> langsMissing,
+                                                 Set<String> langsGiven) {
         Set<String> langsMissingInBranch = new HashSet<>();
         for (String inputLang : relatedLangs) {
             if (inputLang.equals(lca)) {
                 continue;
             }
-            for (String ancLang : phylo.pathToRoot(inputLang)) {
+            for (String ancLang : phyloIndex.pathToRoot(inputLang)) {
                 if (langsGiven.contains(ancLang)) {
                     continue;
                 }
@@ -282,16 +635,16 @@ public class EtymologyIdeaGenerator extends IdeaGenerator {
     }
 
     private void addAtomsForSingleForm(IndexedObjectStore objectStore, Form form, Set<Integer> homPegs) {
-        pslProblem.addObservation("Fsim", 1.0, form.toString(), form.toString());
-        ((EtymologyProblem) pslProblem).addFixedAtom("Fsim", form.toString(), form.toString());
+        atoms.addObservation("Fsim", 1.0, form.toString(), form.toString());
+        atoms.addFixedAtom("Fsim", form.toString(), form.toString());
         systemLogger.trace("Fsim: Xloa(" + form.prettyPrint() + ", " + form.prettyPrint() + ") 1.0");
 
         addHomsetInfo(objectStore, form, homPegs);
 
         // Make sure the EinhOrEloaOrEunk rule always gets grounded:
-        pslProblem.addObservation("Eloa", 0.0, form.toString(), CTRL_ARG + "");
-        ((EtymologyProblem) pslProblem).addFixedAtom("Eloa", form.toString(), CTRL_ARG + "");
-        ((EtymologyProblem) pslProblem).addHiddenAtom("Eloa", form.toString(), CTRL_ARG + "");
+        atoms.addObservation("Eloa", 0.0, form.toString(), CTRL_ARG + "");
+        atoms.addFixedAtom("Eloa", form.toString(), CTRL_ARG + "");
+        atoms.addHiddenAtom("Eloa", form.toString(), CTRL_ARG + "");
         systemLogger.trace("Observation: Eloa(" + form.prettyPrint() + ", CTRL_ARG) 0.0");
     }
 
@@ -304,7 +657,7 @@ public class EtymologyIdeaGenerator extends IdeaGenerator {
         if (pegForForm == -1) {
             // Unknown homologue set -> infer set membership.
             for (int homPeg : homPegs) {
-                pslProblem.addTarget("Fhom", form.toString(), homPeg + "");
+                atoms.addTarget("Fhom", form.toString(), homPeg + "");
                 systemLogger.trace("Target: Fhom(" + form.prettyPrint() + ", " + theory.normalize(homPeg) + ")");
             }
             return;
@@ -314,16 +667,52 @@ public class EtymologyIdeaGenerator extends IdeaGenerator {
         // (display warning if no input forms belong to any homsets)
         for (int homPeg : homPegs) {
             if (homPeg == pegForForm) {
-                pslProblem.addObservation("Fhom", 1.0, form.toString(), homPeg + "");
+                atoms.addObservation("Fhom", 1.0, form.toString(), homPeg + "");
             } else {
-                pslProblem.addObservation("Fhom", 0.0, form.toString(), homPeg + "");
+                atoms.addObservation("Fhom", 0.0, form.toString(), homPeg + "");
             }
-            ((EtymologyProblem) pslProblem).addFixedAtom("Fhom", form.toString(), homPeg + "");
+            atoms.addFixedAtom("Fhom", form.toString(), homPeg + "");
             systemLogger.trace(
                         "Observation: Fhom(" + form.prettyPrint() + ", " + theory.normalize(homPeg) + ") 1.0");
         }
     }
 
+    // Dense indices for the forms of one run (in the order in which they were added).
+    // Forms are only created through the index, so there is exactly one Form object per attested form ID
+    // and per hypothetical form.
+    private class FormIndex {
+        private final Map<Integer, Form> attested = new HashMap<>();
+        private final Map<String, Form> hypothetical = new HashMap<>();
+        private final List<Form> forms = new ArrayList<>();
+        private final Map<Form, Integer> formToIdx = new HashMap<>();
+
+        Form attested(int id) {
+            return attested.computeIfAbsent(id, Form::new);
+        }
+
+        Form hypothetical(String str) {
+            return hypothetical.computeIfAbsent(str, Form::new);
+        }
+
+        // Returns false if the form has already been added.
+        boolean add(Form form) {
+            if (formToIdx.containsKey(form)) {
+                return false;
+            }
+            formToIdx.put(form, forms.size());
+            forms.add(form);
+            return true;
+        }
+
+        boolean contains(Form form) {
+            return formToIdx.containsKey(form);
+        }
+
+        List<Form> getForms() {
+            return Collections.unmodifiableList(forms);
+        }
+    }
+
     class Form {
         Integer id = null;
         String str = null;
@@ -348,6 +737,23 @@ public class EtymologyIdeaGenerator extends IdeaGenerator {
         public String toString() {
             return id == null ? str : id + "";
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Form)) {
+                return false;
+            }
+            Form other = (Form) o;
+            return Objects.equals(id, other.id) && Objects.equals(str, other.str);
+        }
+
+        @Override
+        public int hashCode() {
+            return id == null ? str.hashCode() : id;
+        }
     }
 
 }
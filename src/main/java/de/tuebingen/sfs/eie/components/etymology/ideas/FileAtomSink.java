@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.ideas;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+// Dumps the generated atoms to a tab-separated file (one atom per line: type, predicate, arguments, value)
+// instead of creating them, e.g. for comparing the output of two versions of the idea generator.
+public class FileAtomSink implements AtomSink, Closeable {
+
+    private final PrintWriter out;
+
+    public FileAtomSink(Path path) throws IOException {
+        BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        this.out = new PrintWriter(writer);
+    }
+
+    @Override
+    public void addObservation(String pred, double value, String... args) {
+        out.println("OBS\t" + pred + "\t" + String.join(",", args) + "\t" + value);
+    }
+
+    @Override
+    public void addTarget(String pred, double initialValue, String... args) {
+        out.println("TARGET\t" + pred + "\t" + String.join(",", args) +
+                (Double.isNaN(initialValue) ? "" : "\t" + initialValue));
+    }
+
+    @Override
+    public void addFixedAtom(String pred, String... args) {
+        out.println("FIXED\t" + pred + "\t" + String.join(",", args));
+    }
+
+    @Override
+    public void addHiddenAtom(String pred, String... args) {
+        out.println("HIDDEN\t" + pred + "\t" + String.join(",", args));
+    }
+
+    @Override
+    public void removeAtoms(String pred, List<String[]> argTuples) {
+        for (String[] args : argTuples) {
+            out.println("REMOVE\t" + pred + "\t" + String.join(",", args));
+        }
+    }
+
+    @Override
+    public void flush() {
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        out.close();
+    }
+
+}
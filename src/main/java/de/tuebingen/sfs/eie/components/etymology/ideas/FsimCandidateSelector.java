@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.ideas;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Decides which pairs of attested forms are similar enough to get Fsim atoms at all.
+// A pair is kept if it is among the topK most similar pairs of either of its forms and if its similarity
+// is at least minSim. (Pairs required by the tree structure are added by the idea generator regardless.)
+class FsimCandidateSelector {
+
+    private final int topK;
+    private final double minSim;
+
+    FsimCandidateSelector(int topK, double minSim) {
+        this.topK = topK;
+        this.minSim = minSim;
+    }
+
+    boolean isActive() {
+        return topK > 0 || minSim > 0.0;
+    }
+
+    // formIdx1/formIdx2: the positions of the forms in the list of all forms (0 <= idx < nForms)
+    boolean[] select(int nForms, int[] formIdx1, int[] formIdx2, double[] sims) {
+        int nPairs = sims.length;
+        boolean[] keep = new boolean[nPairs];
+        if (!isActive()) {
+            Arrays.fill(keep, true);
+            return keep;
+        }
+
+        if (topK <= 0) {
+            for (int p = 0; p < nPairs; p++) {
+                keep[p] = sims[p] >= minSim;
+            }
+            return keep;
+        }
+
+        List<List<Integer>> pairsPerForm = new ArrayList<>(nForms);
+        for (int i = 0; i < nForms; i++) {
+            pairsPerForm.add(new ArrayList<>());
+        }
+        for (int p = 0; p < nPairs; p++) {
+            pairsPerForm.get(formIdx1[p]).add(p);
+            pairsPerForm.get(formIdx2[p]).add(p);
+        }
+        for (List<Integer> pairs : pairsPerForm) {
+            // Ties are broken by the pair order, which keeps the selection deterministic.
+            pairs.sort((p1, p2) -> {
+                int cmp = Double.compare(sims[p2], sims[p1]);
+                return cmp != 0 ? cmp : Integer.compare(p1, p2);
+            });
+            for (int n = 0; n < topK && n < pairs.size(); n++) {
+                int p = pairs.get(n);
+                if (sims[p] >= minSim) {
+                    keep[p] = true;
+                }
+            }
+        }
+        return keep;
+    }
+
+}
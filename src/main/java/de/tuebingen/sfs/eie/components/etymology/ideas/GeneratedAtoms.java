@@ -0,0 +1,205 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.ideas;
+
+import de.tuebingen.sfs.eie.components.etymology.problems.EtymologyProblem;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
+
+// The atoms produced by one run of the idea generator, collected before they are added to the problem.
+// For incremental reruns (when only a few input forms have changed), the atoms of the previous run for the same
+// query (problem ID, i.e. the same database partitions) are kept, and only the difference between the two runs is
+// written to the problem. Atoms that were deleted from the partitions since then (see
+// EtymologyProblem.getAtomCleanUps) don't count as written.
+class GeneratedAtoms {
+
+    // Problem ID -> last run written into its partitions
+    private static final Map<String, GeneratedAtoms> previousRuns = new HashMap<>();
+
+    static class Atom {
+        final String pred;
+        final String[] args;
+        // NaN for target atoms
+        double value = Double.NaN;
+        // Target atoms only: the value the solver starts from (NaN: default)
+        double initialValue = Double.NaN;
+        boolean fixed = false;
+        boolean hidden = false;
+
+        Atom(String pred, String[] args) {
+            this.pred = pred;
+            this.args = args;
+        }
+
+        boolean isTarget() {
+            return Double.isNaN(value);
+        }
+
+        boolean sameAs(Atom other) {
+            // Compare the bits so that two targets (NaN) count as the same.
+            return Double.doubleToLongBits(value) == Double.doubleToLongBits(other.value) && fixed == other.fixed &&
+                    hidden == other.hidden;
+        }
+    }
+
+    // Keys in the same format as the fixed/hidden atoms of EtymologyProblem
+    private final Map<String, Atom> atoms = new LinkedHashMap<>();
+    // EtymologyProblem.getAtomCleanUps when the atoms were written, and the problem instance they were written to
+    private int atomCleanUps = 0;
+    private WeakReference<EtymologyProblem> writtenTo = null;
+
+    private static String key(String pred, String[] args) {
+        return pred + "(" + String.join(", ", args) + ")";
+    }
+
+    private Atom get(String pred, String[] args) {
+        return atoms.computeIfAbsent(key(pred, args), k -> new Atom(pred, args));
+    }
+
+    void addObservation(String pred, double value, String... args) {
+        get(pred, args).value = value;
+    }
+
+    void addTarget(String pred, String... args) {
+        get(pred, args).value = Double.NaN;
+    }
+
+    void addFixedAtom(String pred, String... args) {
+        get(pred, args).fixed = true;
+    }
+
+    void addHiddenAtom(String pred, String... args) {
+        get(pred, args).hidden = true;
+    }
+
+    int size() {
+        return atoms.size();
+    }
+
+    Collection<Atom> getAtoms() {
+        return atoms.values();
+    }
+
+    // The atoms of the last run that are still in the partitions of the problem (null: no atoms are known to be
+    // there, so everything needs to be written)
+    static synchronized GeneratedAtoms getPreviousRun(EtymologyProblem problem) {
+        GeneratedAtoms previous = previousRuns.get(problem.getName());
+        if (previous == null) {
+            return null;
+        }
+        int cleanUps = EtymologyProblem.getAtomCleanUps(problem.getName());
+        if (cleanUps == previous.atomCleanUps) {
+            return previous;
+        }
+        GeneratedAtoms remaining = new GeneratedAtoms();
+        for (Map.Entry<String, Atom> entry : previous.atoms.entrySet()) {
+            if (!EtymologyProblem.CLEANED_UP_PREDICATES.contains(entry.getValue().pred)) {
+                remaining.atoms.put(entry.getKey(), entry.getValue());
+            }
+        }
+        remaining.atomCleanUps = cleanUps;
+        remaining.writtenTo = previous.writtenTo;
+        previousRuns.put(problem.getName(), remaining);
+        return remaining;
+    }
+
+    static synchronized void setPreviousRun(EtymologyProblem problem, GeneratedAtoms atoms) {
+        if (atoms == null) {
+            previousRuns.remove(problem.getName());
+        } else {
+            atoms.atomCleanUps = EtymologyProblem.getAtomCleanUps(problem.getName());
+            atoms.writtenTo = new WeakReference<>(problem);
+            previousRuns.put(problem.getName(), atoms);
+        }
+    }
+
+    void addTo(AtomSink sink) {
+        for (Atom atom : atoms.values()) {
+            add(sink, atom);
+        }
+        sink.flush();
+    }
+
+    private static void add(AtomSink sink, Atom atom) {
+        if (atom.isTarget()) {
+            sink.addTarget(atom.pred, atom.initialValue, atom.args);
+        } else {
+            sink.addObservation(atom.pred, atom.value, atom.args);
+        }
+        if (atom.fixed) {
+            sink.addFixedAtom(atom.pred, atom.args);
+        }
+        if (atom.hidden) {
+            sink.addHiddenAtom(atom.pred, atom.args);
+        }
+    }
+
+    // Only writes the atoms that differ from the previous run (as returned by getPreviousRun for the same problem).
+    // If the previous run was written by another problem instance for the same query, the unchanged atoms are
+    // only registered with the new instance, since they are in the partitions already.
+    // Returns the number of added, removed and changed atoms.
+    int[] addDeltaTo(AtomSink sink, GeneratedAtoms previous, EtymologyProblem problem) {
+        boolean sameInstance = previous.writtenTo != null && previous.writtenTo.get() == problem;
+        Map<String, List<String[]>> toRemove = new LinkedHashMap<>();
+        List<Atom> toAdd = new ArrayList<>();
+        int nAdded = 0;
+        int nRemoved = 0;
+        int nChanged = 0;
+        for (Map.Entry<String, Atom> entry : previous.atoms.entrySet()) {
+            Atom oldAtom = entry.getValue();
+            Atom newAtom = atoms.get(entry.getKey());
+            if (newAtom == null) {
+                toRemove.computeIfAbsent(oldAtom.pred, k -> new ArrayList<>()).add(oldAtom.args);
+                nRemoved++;
+            } else if (!newAtom.sameAs(oldAtom)) {
+                // Changed value or status: replace the atom.
+                toRemove.computeIfAbsent(oldAtom.pred, k -> new ArrayList<>()).add(oldAtom.args);
+                toAdd.add(newAtom);
+                nChanged++;
+            } else if (!sameInstance) {
+                problem.addExistingAtom(newAtom.pred, newAtom.value, newAtom.initialValue, newAtom.args);
+                if (newAtom.fixed) {
+                    sink.addFixedAtom(newAtom.pred, newAtom.args);
+                }
+                if (newAtom.hidden) {
+                    sink.addHiddenAtom(newAtom.pred, newAtom.args);
+                }
+            }
+        }
+        for (Map.Entry<String, Atom> entry : atoms.entrySet()) {
+            if (!previous.atoms.containsKey(entry.getKey())) {
+                toAdd.add(entry.getValue());
+                nAdded++;
+            }
+        }
+
+        for (Map.Entry<String, List<String[]>> entry : toRemove.entrySet()) {
+            sink.removeAtoms(entry.getKey(), entry.getValue());
+        }
+        for (Atom atom : toAdd) {
+            add(sink, atom);
+        }
+        sink.flush();
+        return new int[]{nAdded, nRemoved, nChanged};
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.ideas;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Size-bounded LRU cache for the language closures of a phylogeny, i.e. for the proto-languages (and contact
+// ancestors) that get added to a set of input languages. Batch runs over many concepts for the same language
+// sample only need to expand the tree once.
+// The key is the sorted list of input languages. Each phylogeny index has its own cache, so the entries can't
+// outlive changes to the tree.
+class LanguageClosureCache {
+
+    static class Closure {
+        final Set<String> langsMissing;
+        final String lca;
+        // Only if the input languages belong to several families:
+        final List<String> branchLcas;
+        final List<String> contactAncestors;
+
+        Closure(Set<String> langsMissing, String lca, List<String> branchLcas, List<String> contactAncestors) {
+            this.langsMissing = Collections.unmodifiableSet(langsMissing);
+            this.lca = lca;
+            this.branchLcas = Collections.unmodifiableList(branchLcas);
+            this.contactAncestors = Collections.unmodifiableList(contactAncestors);
+        }
+    }
+
+    private final LinkedHashMap<List<String>, Closure> closures;
+    private int capacity;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    LanguageClosureCache(int capacity) {
+        this.capacity = capacity;
+        // Access order -> the eldest entry is the least recently used one.
+        this.closures = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<String>, Closure> eldest) {
+                return size() > LanguageClosureCache.this.capacity;
+            }
+        };
+    }
+
+    static List<String> key(Collection<String> langs) {
+        List<String> key = new ArrayList<>(langs);
+        Collections.sort(key);
+        return key;
+    }
+
+    // null if the closure for these languages isn't cached
+    synchronized Closure get(Collection<String> langs) {
+        Closure closure = closures.get(key(langs));
+        if (closure == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return closure;
+    }
+
+    synchronized void put(Collection<String> langs, Closure closure) {
+        closures.put(key(langs), closure);
+    }
+
+    synchronized void setCapacity(int capacity) {
+        this.capacity = capacity;
+        var it = closures.entrySet().iterator();
+        while (closures.size() > capacity && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    synchronized int size() {
+        return closures.size();
+    }
+
+    synchronized String printStats() {
+        return "Language closure cache: " + closures.size() + "/" + capacity + " entries, " + hits + " hits, " +
+                misses + " misses";
+    }
+
+}
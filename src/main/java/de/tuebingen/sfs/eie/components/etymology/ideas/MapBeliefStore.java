@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.ideas;
+
+import de.tuebingen.sfs.eie.components.etymology.problems.EtymologyResultStore;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Belief store backed by the value map of an earlier inference (atom string -> belief value, as passed to the
+// InferenceResult), plus the atoms the user has confirmed since.
+// Given the result store of the earlier inference instead, the previous beliefs are looked up there directly.
+public class MapBeliefStore implements EtymologyBeliefStore {
+
+    private final Map<String, Double> previousBeliefs;
+    private final EtymologyResultStore previousResults;
+    private final Map<String, Double> confirmedBeliefs;
+
+    public MapBeliefStore(Map<String, Double> previousBeliefs) {
+        this.previousBeliefs = new HashMap<>(previousBeliefs);
+        this.previousResults = null;
+        this.confirmedBeliefs = new HashMap<>();
+    }
+
+    public MapBeliefStore(EtymologyResultStore previousResults, Set<String> confirmedAtoms) {
+        this.previousBeliefs = null;
+        this.previousResults = previousResults;
+        this.confirmedBeliefs = new HashMap<>();
+        for (String atom : confirmedAtoms) {
+            Double belief = previousResults.asMap().get(atom);
+            if (belief != null) {
+                confirmedBeliefs.put(atom, belief);
+            }
+        }
+    }
+
+    public MapBeliefStore(Map<String, Double> previousBeliefs, Set<String> confirmedAtoms) {
+        this(previousBeliefs);
+        for (String atom : confirmedAtoms) {
+            Double belief = previousBeliefs.get(atom);
+            if (belief != null) {
+                confirmedBeliefs.put(atom, belief);
+            }
+        }
+    }
+
+    public void confirm(String atom, double belief) {
+        confirmedBeliefs.put(atom, belief);
+    }
+
+    private static String key(String pred, String[] args) {
+        return pred + "(" + String.join(", ", args) + ")";
+    }
+
+    @Override
+    public double getConfirmedBelief(String pred, String... args) {
+        return confirmedBeliefs.getOrDefault(key(pred, args), Double.NaN);
+    }
+
+    @Override
+    public double getPreviousBelief(String pred, String... args) {
+        if (previousResults != null) {
+            return previousResults.get(pred, args);
+        }
+        return previousBeliefs.getOrDefault(key(pred, args), Double.NaN);
+    }
+
+}
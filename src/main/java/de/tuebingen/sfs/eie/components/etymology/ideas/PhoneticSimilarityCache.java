@@ -0,0 +1,251 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.ideas;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+// Size-bounded LRU cache for phonetic similarities between attested forms, shared across inference runs.
+// The similarities are symmetric, so the key is the unordered pair of form IDs.
+// Every cache belongs to one version of the correspondence model (or, if the version isn't known, to one model
+// object), so values computed with different models never get mixed up.
+public class PhoneticSimilarityCache {
+
+    // Shared caches for the most recently used model versions
+    private static final int MAX_SHARED_VERSIONS = 4;
+    private static final Map<String, PhoneticSimilarityCache> sharedByVersion =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PhoneticSimilarityCache> eldest) {
+                    return size() > MAX_SHARED_VERSIONS;
+                }
+            };
+    // For models without a version: only valid for as long as the model object is in use
+    private static final Map<Object, PhoneticSimilarityCache> sharedByModel = new WeakHashMap<>();
+
+    private final LinkedHashMap<Long, Double> sims;
+    private int capacity;
+    // null: not tied to a version (never saved)
+    private final String modelVersion;
+    // Whether entries have been added since the cache was last saved
+    private boolean dirty = false;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public PhoneticSimilarityCache(int capacity) {
+        this(capacity, null);
+    }
+
+    public PhoneticSimilarityCache(int capacity, String modelVersion) {
+        this.capacity = capacity;
+        this.modelVersion = modelVersion;
+        // Access order -> the eldest entry is the least recently used one.
+        this.sims = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Double> eldest) {
+                if (size() > PhoneticSimilarityCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // The shared cache for the given model version. A new cache is filled from the cache file (if any).
+    public static synchronized PhoneticSimilarityCache shared(String modelVersion, int capacity, Path cacheFile) {
+        PhoneticSimilarityCache cache = sharedByVersion.get(modelVersion);
+        if (cache == null) {
+            cache = new PhoneticSimilarityCache(capacity, modelVersion);
+            if (cacheFile != null) {
+                cache.load(cacheFile);
+            }
+            sharedByVersion.put(modelVersion, cache);
+        } else {
+            cache.setCapacity(capacity);
+        }
+        return cache;
+    }
+
+    // The shared cache for a model object without a version
+    public static synchronized PhoneticSimilarityCache shared(Object model, int capacity) {
+        PhoneticSimilarityCache cache = sharedByModel.get(model);
+        if (cache == null) {
+            cache = new PhoneticSimilarityCache(capacity);
+            sharedByModel.put(model, cache);
+        } else {
+            cache.setCapacity(capacity);
+        }
+        return cache;
+    }
+
+    static long key(int formId1, int formId2) {
+        int min = Math.min(formId1, formId2);
+        int max = Math.max(formId1, formId2);
+        return ((long) min << 32) | (max & 0xffffffffL);
+    }
+
+    public String getModelVersion() {
+        return modelVersion;
+    }
+
+    // Returns NaN if the similarity isn't cached.
+    public synchronized double get(int formId1, int formId2) {
+        Double sim = sims.get(key(formId1, formId2));
+        if (sim == null) {
+            misses++;
+            return Double.NaN;
+        }
+        hits++;
+        return sim;
+    }
+
+    public synchronized void put(int formId1, int formId2, double sim) {
+        Double old = sims.put(key(formId1, formId2), sim);
+        if (old == null || Double.compare(old, sim) != 0) {
+            dirty = true;
+        }
+    }
+
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    public synchronized void setCapacity(int capacity) {
+        this.capacity = capacity;
+        if (sims.size() > capacity) {
+            var it = sims.entrySet().iterator();
+            while (sims.size() > capacity && it.hasNext()) {
+                it.next();
+                it.remove();
+                evictions++;
+            }
+        }
+    }
+
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return sims.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized void clear() {
+        sims.clear();
+    }
+
+    public synchronized void resetCounters() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    public synchronized String printStats() {
+        return "Similarity cache: " + sims.size() + "/" + capacity + " entries, " + hits + " hits, " + misses +
+                " misses, " + evictions + " evictions";
+    }
+
+    // ---------------
+    // Import/export
+    // ---------------
+
+    // Adds the entries from a file written by save(), unless they belong to a different model version.
+    public synchronized boolean load(Path path) {
+        if (!Files.exists(path)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(path.toFile())))) {
+            String fileVersion = in.readUTF();
+            if (!fileVersion.equals(modelVersion)) {
+                System.err.println("Ignoring similarity cache file " + path + " (model version " + fileVersion +
+                        " instead of " + modelVersion + ")");
+                return false;
+            }
+            int nEntries = in.readInt();
+            for (int i = 0; i < nEntries; i++) {
+                long key = in.readLong();
+                double sim = in.readDouble();
+                sims.putIfAbsent(key, sim);
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Could not read the similarity cache file " + path);
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // Writes to a temporary file first, so that readers never see a partially written cache file.
+    // Only writes the file if entries have been added since the last save.
+    public synchronized void save(Path path) {
+        if (modelVersion == null || !dirty) {
+            return;
+        }
+        path = path.toAbsolutePath();
+        Path tmpPath = null;
+        try {
+            tmpPath = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmpPath.toFile())))) {
+                out.writeUTF(modelVersion);
+                out.writeInt(sims.size());
+                for (Map.Entry<Long, Double> entry : sims.entrySet()) {
+                    out.writeLong(entry.getKey());
+                    out.writeDouble(entry.getValue());
+                }
+            }
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } catch (IOException e) {
+            if (tmpPath != null) {
+                try {
+                    Files.deleteIfExists(tmpPath);
+                } catch (IOException ignored) {
+                }
+            }
+            System.err.println("Could not save the similarity cache to " + path);
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.ideas;
+
+import de.tuebingen.sfs.eie.shared.util.PhoneticSimilarityHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+// Computes the phonetic similarities for a list of form pairs, spreading the alignments across several threads.
+// Pairs that are covered by a precomputed similarity matrix or that are already in the similarity cache
+// (if any) are not aligned again.
+// The results are written into an array indexed like the input pairs, so the order in which the callers
+// turn them into atoms does not depend on the thread scheduling.
+class PhoneticSimilarityStage {
+
+    // Below this, setting up the thread pool costs more than it saves.
+    private static final int MIN_PAIRS_PER_THREAD = 64;
+    // Several chunks per thread so that threads that get easy pairs can help out with the rest.
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final int nThreads;
+    private final ThreadLocal<PhoneticSimilarityHelper> phonSim;
+    private final PhoneticSimilarityCache cache;
+    private final SimilarityMatrixFile matrix;
+
+    PhoneticSimilarityStage(int nThreads, Supplier<PhoneticSimilarityHelper> phonSimFactory) {
+        this(nThreads, phonSimFactory, null, null);
+    }
+
+    PhoneticSimilarityStage(int nThreads, Supplier<PhoneticSimilarityHelper> phonSimFactory,
+                            PhoneticSimilarityCache cache, SimilarityMatrixFile matrix) {
+        this.nThreads = nThreads > 0 ? nThreads : Runtime.getRuntime().availableProcessors();
+        // The helpers aren't guaranteed to be thread-safe, so every worker gets its own.
+        this.phonSim = ThreadLocal.withInitial(phonSimFactory);
+        this.cache = cache;
+        this.matrix = matrix;
+    }
+
+    double[] similarities(int[] formIds1, int[] formIds2) {
+        if (cache == null && matrix == null) {
+            return align(formIds1, formIds2);
+        }
+
+        int nPairs = formIds1.length;
+        double[] sims = new double[nPairs];
+        int[] uncached = new int[nPairs];
+        int nUncached = 0;
+        for (int i = 0; i < nPairs; i++) {
+            sims[i] = Double.NaN;
+            if (matrix != null) {
+                sims[i] = matrix.similarity(formIds1[i], formIds2[i]);
+            }
+            if (Double.isNaN(sims[i]) && cache != null) {
+                sims[i] = cache.get(formIds1[i], formIds2[i]);
+            }
+            if (Double.isNaN(sims[i])) {
+                uncached[nUncached++] = i;
+            }
+        }
+        if (nUncached == 0) {
+            return sims;
+        }
+
+        int[] uncachedIds1 = new int[nUncached];
+        int[] uncachedIds2 = new int[nUncached];
+        for (int i = 0; i < nUncached; i++) {
+            uncachedIds1[i] = formIds1[uncached[i]];
+            uncachedIds2[i] = formIds2[uncached[i]];
+        }
+        double[] newSims = align(uncachedIds1, uncachedIds2);
+        for (int i = 0; i < nUncached; i++) {
+            sims[uncached[i]] = newSims[i];
+            if (cache != null) {
+                cache.put(uncachedIds1[i], uncachedIds2[i], newSims[i]);
+            }
+        }
+        return sims;
+    }
+
+    private double[] align(int[] formIds1, int[] formIds2) {
+        int nPairs = formIds1.length;
+        double[] sims = new double[nPairs];
+        int nWorkers = Math.min(nThreads, nPairs / MIN_PAIRS_PER_THREAD);
+        if (nWorkers <= 1) {
+            computeRange(formIds1, formIds2, sims, 0, nPairs);
+            return sims;
+        }
+
+        int chunkSize = Math.max(1, nPairs / (nWorkers * CHUNKS_PER_THREAD));
+        ExecutorService executor = Executors.newFixedThreadPool(nWorkers);
+        try {
+            List<Future<?>> chunks = new ArrayList<>();
+            for (int start = 0; start < nPairs; start += chunkSize) {
+                int from = start;
+                int to = Math.min(start + chunkSize, nPairs);
+                chunks.add(executor.submit(() -> computeRange(formIds1, formIds2, sims, from, to)));
+            }
+            for (Future<?> chunk : chunks) {
+                chunk.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while computing phonetic similarities.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException) {
+                throw (CancellationException) e.getCause();
+            }
+            throw new IllegalStateException("Could not compute phonetic similarities.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return sims;
+    }
+
+    private void computeRange(int[] formIds1, int[] formIds2, double[] sims, int from, int to) {
+        PhoneticSimilarityHelper helper = phonSim.get();
+        for (int i = from; i < to; i++) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Interrupted while computing phonetic similarities.");
+            }
+            sims[i] = helper.similarity(formIds1[i], formIds2[i]);
+        }
+    }
+
+}
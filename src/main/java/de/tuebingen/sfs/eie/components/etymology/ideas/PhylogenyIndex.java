@@ -0,0 +1,304 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.ideas;
+
+import de.tuebingen.sfs.eie.shared.core.LanguagePhylogeny;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+// Read-only lookup structure for a language phylogeny, built once and then shared by all idea generation runs
+// on the same tree. Languages are mapped to dense ints, and
+// - lowest common ancestors come from an Euler tour of the tree plus a sparse table over the tour
+//   (O(1) per pair after O(n log n) preprocessing),
+// - ancestor checks use the first/last positions of the languages in the tour,
+// - paths to the root, family ancestors and incoming contacts are stored as int arrays.
+// Languages that aren't part of the tree are passed on to the phylogeny itself.
+// The index also holds the cache for the language closures computed on this tree.
+class PhylogenyIndex {
+
+    private static final Map<LanguagePhylogeny, PhylogenyIndex> indices = new WeakHashMap<>();
+
+    private final LanguagePhylogeny phylo;
+    // To notice changes to the phylogeny
+    private final int parentsHash;
+
+    private final List<String> langs = new ArrayList<>();
+    private final Map<String, Integer> langToIdx = new HashMap<>();
+    private final int rootIdx;
+    private int[] parent;
+    private int[] depth;
+
+    private int[] tour; // language indices in Euler tour order
+    private int[] firstPos;
+    private int[] lastPos;
+    private int[][] minDepthPos; // minDepthPos[k][i]: position of the shallowest node in tour[i, i + 2^k)
+
+    private final int[][] pathToRoot;
+    private final List<List<String>> pathToRootLangs;
+    private final int[] familyAncestor;
+    private final int[][] incomingInfluences;
+
+    private LanguageClosureCache closureCache = null;
+
+    private PhylogenyIndex(LanguagePhylogeny phylo) {
+        this.phylo = phylo;
+        this.parentsHash = phylo.parents.hashCode();
+
+        rootIdx = indexOrAdd(LanguagePhylogeny.root);
+        for (Map.Entry<String, String> entry : phylo.parents.entrySet()) {
+            indexOrAdd(entry.getKey());
+            indexOrAdd(entry.getValue());
+        }
+        for (String lang : new ArrayList<>(langs)) {
+            if (phylo.hasIncomingInfluences(lang)) {
+                phylo.getIncomingInfluences(lang).forEach(this::indexOrAdd);
+            }
+        }
+        int n = langs.size();
+        parent = new int[n];
+        List<List<Integer>> children = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            children.add(new ArrayList<>());
+        }
+        for (int i = 0; i < n; i++) {
+            if (i == rootIdx) {
+                parent[i] = -1;
+                continue;
+            }
+            String parentLang = phylo.parents.get(langs.get(i));
+            // Languages without a parent entry are treated as top-level languages.
+            parent[i] = parentLang == null ? rootIdx : langToIdx.get(parentLang);
+            children.get(parent[i]).add(i);
+        }
+        buildEulerTour(children);
+        buildSparseTable();
+
+        pathToRoot = new int[n][];
+        pathToRootLangs = new ArrayList<>(n);
+        familyAncestor = new int[n];
+        incomingInfluences = new int[n][];
+        for (int i = 0; i < n; i++) {
+            String lang = langs.get(i);
+            if (i == rootIdx) {
+                pathToRoot[i] = new int[0];
+                pathToRootLangs.add(Collections.emptyList());
+                familyAncestor[i] = -1;
+                incomingInfluences[i] = new int[0];
+                continue;
+            }
+            List<String> path = phylo.pathToRoot(lang);
+            pathToRoot[i] = toIndices(path);
+            pathToRootLangs.add(path == null ? Collections.emptyList() : List.copyOf(path));
+            List<String> pathFromRoot = phylo.getPathFor(lang);
+            familyAncestor[i] = pathFromRoot == null || pathFromRoot.isEmpty() ? -1 : indexOf(pathFromRoot.get(0));
+            incomingInfluences[i] = phylo.hasIncomingInfluences(lang) ?
+                    toIndices(phylo.getIncomingInfluences(lang)) : new int[0];
+        }
+    }
+
+    // Returns the index for this phylogeny, (re-)building it if the tree has changed since the last call.
+    static synchronized PhylogenyIndex forPhylogeny(LanguagePhylogeny phylo) {
+        PhylogenyIndex index = indices.get(phylo);
+        if (index == null || index.parentsHash != phylo.parents.hashCode()) {
+            index = new PhylogenyIndex(phylo);
+            indices.put(phylo, index);
+        }
+        return index;
+    }
+
+    // null if capacity is 0
+    synchronized LanguageClosureCache getClosureCache(int capacity) {
+        if (capacity <= 0) {
+            return null;
+        }
+        if (closureCache == null) {
+            closureCache = new LanguageClosureCache(capacity);
+        } else {
+            closureCache.setCapacity(capacity);
+        }
+        return closureCache;
+    }
+
+    private int indexOrAdd(String lang) {
+        Integer idx = langToIdx.get(lang);
+        if (idx == null) {
+            idx = langs.size();
+            langs.add(lang);
+            langToIdx.put(lang, idx);
+        }
+        return idx;
+    }
+
+    // Skips languages outside the tree.
+    private int[] toIndices(Collection<String> langs) {
+        if (langs == null) {
+            return new int[0];
+        }
+        return langs.stream().mapToInt(this::indexOf).filter(idx -> idx >= 0).toArray();
+    }
+
+    private void buildEulerTour(List<List<Integer>> children) {
+        int n = langs.size();
+        depth = new int[n];
+        firstPos = new int[n];
+        lastPos = new int[n];
+        tour = new int[2 * n - 1];
+        int pos = 0;
+        // Iterative DFS, the trees can be deep.
+        int[] stack = new int[n];
+        int[] nextChild = new int[n];
+        int top = 0;
+        stack[0] = rootIdx;
+        firstPos[rootIdx] = pos;
+        tour[pos++] = rootIdx;
+        while (top >= 0) {
+            int node = stack[top];
+            List<Integer> nodeChildren = children.get(node);
+            if (nextChild[node] < nodeChildren.size()) {
+                int child = nodeChildren.get(nextChild[node]++);
+                depth[child] = depth[node] + 1;
+                stack[++top] = child;
+                firstPos[child] = pos;
+                tour[pos++] = child;
+            } else {
+                lastPos[node] = pos - 1;
+                top--;
+                if (top >= 0) {
+                    tour[pos++] = stack[top];
+                }
+            }
+        }
+    }
+
+    private void buildSparseTable() {
+        int m = tour.length;
+        int levels = 32 - Integer.numberOfLeadingZeros(m);
+        minDepthPos = new int[levels][];
+        minDepthPos[0] = new int[m];
+        for (int i = 0; i < m; i++) {
+            minDepthPos[0][i] = i;
+        }
+        for (int k = 1; k < levels; k++) {
+            int len = m - (1 << k) + 1;
+            minDepthPos[k] = new int[len];
+            for (int i = 0; i < len; i++) {
+                int left = minDepthPos[k - 1][i];
+                int right = minDepthPos[k - 1][i + (1 << (k - 1))];
+                minDepthPos[k][i] = depth[tour[left]] <= depth[tour[right]] ? left : right;
+            }
+        }
+    }
+
+    // ---------------
+    // Queries
+    // ---------------
+
+    // -1 if the language isn't part of the tree
+    int indexOf(String lang) {
+        Integer idx = langToIdx.get(lang);
+        return idx == null ? -1 : idx;
+    }
+
+    String getLanguage(int idx) {
+        return langs.get(idx);
+    }
+
+    int size() {
+        return langs.size();
+    }
+
+    int getParent(int idx) {
+        return parent[idx];
+    }
+
+    boolean isRoot(int idx) {
+        return idx == rootIdx;
+    }
+
+    // Whether anc is lang or one of its ancestors.
+    boolean isAncestorOrSelf(int anc, int lang) {
+        return firstPos[anc] <= firstPos[lang] && lastPos[lang] <= lastPos[anc];
+    }
+
+    int lowestCommonAncestor(int idx1, int idx2) {
+        int from = Math.min(firstPos[idx1], firstPos[idx2]);
+        int to = Math.max(firstPos[idx1], firstPos[idx2]);
+        int k = 31 - Integer.numberOfLeadingZeros(to - from + 1);
+        int left = minDepthPos[k][from];
+        int right = minDepthPos[k][to - (1 << k) + 1];
+        return tour[depth[tour[left]] <= depth[tour[right]] ? left : right];
+    }
+
+    String lowestCommonAncestor(Collection<String> langs) {
+        int lca = -1;
+        for (String lang : langs) {
+            int idx = indexOf(lang);
+            if (idx < 0) {
+                return phylo.lowestCommonAncestor(new ArrayList<>(langs));
+            }
+            lca = lca < 0 ? idx : lowestCommonAncestor(lca, idx);
+        }
+        return lca < 0 ? LanguagePhylogeny.root : getLanguage(lca);
+    }
+
+    // Same order as LanguagePhylogeny.pathToRoot. Don't modify the returned array.
+    int[] pathToRoot(int idx) {
+        return pathToRoot[idx];
+    }
+
+    List<String> pathToRoot(String lang) {
+        int idx = indexOf(lang);
+        return idx < 0 ? phylo.pathToRoot(lang) : pathToRootLangs.get(idx);
+    }
+
+    // The top-level ancestor of the language (the first language of LanguagePhylogeny.getPathFor), or -1.
+    int getFamilyAncestor(int idx) {
+        return familyAncestor[idx];
+    }
+
+    // Don't modify the returned array.
+    int[] getIncomingInfluences(int idx) {
+        return incomingInfluences[idx];
+    }
+
+    boolean hasContact(String recipient, String donor) {
+        int recipientIdx = indexOf(recipient);
+        int donorIdx = indexOf(donor);
+        if (recipientIdx < 0 || donorIdx < 0) {
+            Set<String> influences = phylo.hasIncomingInfluences(recipient) ?
+                    phylo.getIncomingInfluences(recipient) : null;
+            return influences != null && influences.contains(donor);
+        }
+        for (int contact : incomingInfluences[recipientIdx]) {
+            if (contact == donorIdx) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    String[] oldestContactLanguages(List<String>[] families, String[] lcas) {
+        return phylo.oldestContactLanguages(families, lcas);
+    }
+
+}
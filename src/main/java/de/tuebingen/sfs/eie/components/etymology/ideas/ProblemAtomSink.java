@@ -0,0 +1,58 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.ideas;
+
+import de.tuebingen.sfs.eie.components.etymology.problems.EtymologyProblem;
+
+import java.util.List;
+
+// Writes the atoms straight into the etymology problem (the default sink).
+// There is no batching variant: the database partitions belong to the infrastructure's PslProblem, which only
+// takes one atom at a time (addObservation/addTarget), so buffering the atoms here wouldn't save any inserts.
+public class ProblemAtomSink implements AtomSink {
+
+    private final EtymologyProblem problem;
+
+    public ProblemAtomSink(EtymologyProblem problem) {
+        this.problem = problem;
+    }
+
+    @Override
+    public void addObservation(String pred, double value, String... args) {
+        problem.addObservedAtom(pred, value, args);
+    }
+
+    @Override
+    public void addTarget(String pred, double initialValue, String... args) {
+        problem.addTargetAtom(pred, initialValue, args);
+    }
+
+    @Override
+    public void addFixedAtom(String pred, String... args) {
+        problem.addFixedAtom(pred, args);
+    }
+
+    @Override
+    public void addHiddenAtom(String pred, String... args) {
+        problem.addHiddenAtom(pred, args);
+    }
+
+    @Override
+    public void removeAtoms(String pred, List<String[]> argTuples) {
+        problem.removeAtoms(pred, argTuples);
+    }
+
+}
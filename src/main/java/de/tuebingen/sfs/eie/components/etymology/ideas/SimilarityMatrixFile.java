@@ -0,0 +1,275 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.ideas;
+
+import de.tuebingen.sfs.eie.shared.core.EtymologicalTheory;
+import de.tuebingen.sfs.eie.shared.util.PhoneticSimilarityHelper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+// Precomputed phonetic similarities between all pairs of a fixed set of attested forms.
+// File layout (big-endian):
+// - magic number, format version
+// - the version of the correspondence model the similarities were computed with
+//   (length in bytes as an int, then UTF-8; empty if unknown)
+// - number of forms n
+// - the n form IDs in ascending order (the row/column index)
+// - the upper triangle of the similarity matrix (without the diagonal) as floats, row by row;
+//   NaN for pairs involving forms that couldn't be tokenized
+// The reader maps the file into memory instead of loading it, so only the pages that are actually needed
+// get read from disk.
+// Files are replaced atomically when they are rewritten, so readers that still map the old file are unaffected.
+public class SimilarityMatrixFile {
+
+    private static final int MAGIC = 0x4653494D; // "FSIM"
+    private static final int VERSION = 2;
+    private static final int MAX_MODEL_VERSION_BYTES = 1 << 16;
+    // A single mapped buffer can't be larger than 2 GB.
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    private static final Map<Path, SimilarityMatrixFile> openFiles = new HashMap<>();
+
+    private final Path path;
+    private final String modelVersion;
+    private final int[] formIds;
+    private final MappedByteBuffer[] segments;
+
+    private SimilarityMatrixFile(Path path, String modelVersion, int[] formIds, MappedByteBuffer[] segments) {
+        this.path = path;
+        this.modelVersion = modelVersion;
+        this.formIds = formIds;
+        this.segments = segments;
+    }
+
+    // Returns the already mapped file if it has been opened before.
+    // modelVersion: the version of the correspondence model in use (null if unknown); files computed with a
+    // different version are rejected.
+    public static synchronized SimilarityMatrixFile open(Path path, String modelVersion) throws IOException {
+        path = path.toAbsolutePath().normalize();
+        SimilarityMatrixFile matrix = openFiles.get(path);
+        if (matrix == null) {
+            matrix = read(path);
+            openFiles.put(path, matrix);
+        }
+        String expectedVersion = modelVersion == null ? "" : modelVersion;
+        if (!matrix.modelVersion.equals(expectedVersion)) {
+            throw new IOException("The similarity matrix " + path + " belongs to correspondence model version '" +
+                    matrix.modelVersion + "', not '" + expectedVersion + "'.");
+        }
+        return matrix;
+    }
+
+    private static SimilarityMatrixFile read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(3 * Integer.BYTES).order(ByteOrder.BIG_ENDIAN);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException(path + " is not a similarity matrix file.");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported similarity matrix version in " + path + ": " + version);
+            }
+            int nVersionBytes = header.getInt();
+            if (nVersionBytes < 0 || nVersionBytes > MAX_MODEL_VERSION_BYTES) {
+                throw new IOException("Corrupt similarity matrix header in " + path);
+            }
+            long position = 3 * Integer.BYTES;
+            ByteBuffer versionBytes = ByteBuffer.allocate(nVersionBytes + Integer.BYTES).order(ByteOrder.BIG_ENDIAN);
+            readFully(channel, versionBytes, position);
+            versionBytes.flip();
+            byte[] utf8 = new byte[nVersionBytes];
+            versionBytes.get(utf8);
+            String modelVersion = new String(utf8, StandardCharsets.UTF_8);
+            int nForms = versionBytes.getInt();
+            position += nVersionBytes + Integer.BYTES;
+
+            ByteBuffer index = ByteBuffer.allocate(nForms * Integer.BYTES).order(ByteOrder.BIG_ENDIAN);
+            readFully(channel, index, position);
+            index.flip();
+            int[] formIds = new int[nForms];
+            index.asIntBuffer().get(formIds);
+
+            long dataStart = position + (long) nForms * Integer.BYTES;
+            long dataBytes = nPairs(nForms) * Float.BYTES;
+            if (channel.size() < dataStart + dataBytes) {
+                throw new IOException("Similarity matrix file " + path + " is truncated.");
+            }
+            int nSegments = (int) ((dataBytes + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+            MappedByteBuffer[] segments = new MappedByteBuffer[nSegments];
+            for (int i = 0; i < nSegments; i++) {
+                long offset = (long) i << SEGMENT_SHIFT;
+                long size = Math.min(SEGMENT_MASK + 1, dataBytes - offset);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, dataStart + offset, size);
+                segments[i].order(ByteOrder.BIG_ENDIAN);
+            }
+            return new SimilarityMatrixFile(path, modelVersion, formIds, segments);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file.");
+            }
+            position += read;
+        }
+    }
+
+    private static long nPairs(int nForms) {
+        return (long) nForms * (nForms - 1) / 2;
+    }
+
+    // Position of the pair (i, j) with i < j in the triangle.
+    private static long pairIndex(int nForms, int i, int j) {
+        return (long) i * nForms - (long) i * (i + 1) / 2 + (j - i - 1);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    // Empty if unknown
+    public String getModelVersion() {
+        return modelVersion;
+    }
+
+    public int size() {
+        return formIds.length;
+    }
+
+    public boolean contains(int formId) {
+        return Arrays.binarySearch(formIds, formId) >= 0;
+    }
+
+    // Returns NaN if the pair isn't covered by the matrix.
+    public double similarity(int formId1, int formId2) {
+        int i = Arrays.binarySearch(formIds, formId1);
+        int j = Arrays.binarySearch(formIds, formId2);
+        if (i < 0 || j < 0) {
+            return Double.NaN;
+        }
+        if (i == j) {
+            return 1.0;
+        }
+        if (i > j) {
+            int tmp = i;
+            i = j;
+            j = tmp;
+        }
+        long pos = pairIndex(formIds.length, i, j) * Float.BYTES;
+        return segments[(int) (pos >>> SEGMENT_SHIFT)].getFloat((int) (pos & SEGMENT_MASK));
+    }
+
+    // ---------------
+    // Writing
+    // ---------------
+
+    // modelVersion: the version of the theory's correspondence model (null if unknown)
+    // The matrix is written to a temporary file that then replaces the target file.
+    public static void write(Path path, EtymologicalTheory theory, String modelVersion, Collection<Integer> formIds,
+                             int nThreads) throws IOException {
+        path = path.toAbsolutePath().normalize();
+        int[] ids = formIds.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+        int nForms = ids.length;
+        boolean[] comparable = new boolean[nForms];
+        for (int i = 0; i < nForms; i++) {
+            comparable[i] = theory.tokenize(ids[i]) != null;
+        }
+        PhoneticSimilarityStage simStage = new PhoneticSimilarityStage(nThreads,
+                () -> new PhoneticSimilarityHelper(theory.getIndexedObjectStore().getCorrModel(), theory));
+
+        byte[] versionBytes = (modelVersion == null ? "" : modelVersion).getBytes(StandardCharsets.UTF_8);
+        if (versionBytes.length > MAX_MODEL_VERSION_BYTES) {
+            throw new IOException("Correspondence model version too long: " + modelVersion);
+        }
+
+        Path tmpPath = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(tmpPath, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(4 * Integer.BYTES + versionBytes.length + nForms * Integer.BYTES)
+                    .order(ByteOrder.BIG_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(versionBytes.length).put(versionBytes).putInt(nForms);
+            for (int id : ids) {
+                header.putInt(id);
+            }
+            header.flip();
+            writeFully(channel, header);
+
+            // One row at a time, so the full matrix never has to fit into memory.
+            for (int i = 0; i < nForms - 1; i++) {
+                int nCols = nForms - i - 1;
+                int[] rowIds = new int[nCols];
+                int[] colIds = new int[nCols];
+                int nKnown = 0;
+                if (comparable[i]) {
+                    for (int j = i + 1; j < nForms; j++) {
+                        if (comparable[j]) {
+                            rowIds[nKnown] = ids[i];
+                            colIds[nKnown] = ids[j];
+                            nKnown++;
+                        }
+                    }
+                }
+                double[] sims = simStage.similarities(Arrays.copyOf(rowIds, nKnown),
+                        Arrays.copyOf(colIds, nKnown));
+
+                ByteBuffer row = ByteBuffer.allocate(nCols * Float.BYTES).order(ByteOrder.BIG_ENDIAN);
+                int k = 0;
+                for (int j = i + 1; j < nForms; j++) {
+                    if (comparable[i] && comparable[j]) {
+                        row.putFloat((float) sims[k++]);
+                    } else {
+                        row.putFloat(Float.NaN);
+                    }
+                }
+                row.flip();
+                writeFully(channel, row);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmpPath);
+            throw e;
+        }
+        synchronized (SimilarityMatrixFile.class) {
+            // Readers that have mapped the old file keep their mapping, new readers get the new file.
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            openFiles.remove(path);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.problems;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// In-memory copy of the atoms that were added to an etymology problem (per predicate, with their arguments and
+// whether they are observed or open), for reasoning about the groundings before PSL does the actual grounding.
+public class AtomInventory {
+
+    public static class Entry {
+        public final String[] args;
+        // NaN for open (target) atoms
+        public final double value;
+
+        Entry(String[] args, double value) {
+            this.args = args;
+            this.value = value;
+        }
+
+        public boolean isObserved() {
+            return !Double.isNaN(value);
+        }
+    }
+
+    private final Map<String, Map<String, Entry>> atoms = new HashMap<>();
+    // Incremented on every change, so that callers can tell whether results derived from the atoms are outdated.
+    private int modCount = 0;
+
+    private static String key(String[] args) {
+        return String.join(", ", args);
+    }
+
+    // Printed like the keys of the value map, e.g. Einh(123, 456)
+    public static String print(String pred, String[] args) {
+        return pred + "(" + key(args) + ")";
+    }
+
+    public static String predicate(String printedAtom) {
+        return printedAtom.substring(0, printedAtom.indexOf('('));
+    }
+
+    void addObservation(String pred, double value, String[] args) {
+        modCount++;
+        atoms.computeIfAbsent(pred, k -> new LinkedHashMap<>()).put(key(args), new Entry(args, value));
+    }
+
+    void addTarget(String pred, String[] args) {
+        modCount++;
+        atoms.computeIfAbsent(pred, k -> new LinkedHashMap<>()).put(key(args), new Entry(args, Double.NaN));
+    }
+
+    // NaN: open atom
+    void add(String pred, String[] args, double value) {
+        if (Double.isNaN(value)) {
+            addTarget(pred, args);
+        } else {
+            addObservation(pred, value, args);
+        }
+    }
+
+    void remove(String pred, String[] args) {
+        modCount++;
+        Map<String, Entry> atomsForPred = atoms.get(pred);
+        if (atomsForPred != null) {
+            atomsForPred.remove(key(args));
+        }
+    }
+
+    public int getModificationCount() {
+        return modCount;
+    }
+
+    public Set<String> getPredicates() {
+        return atoms.keySet();
+    }
+
+    public Collection<Entry> getAtoms(String pred) {
+        Map<String, Entry> atomsForPred = atoms.get(pred);
+        return atomsForPred == null ? Collections.emptyList() : atomsForPred.values();
+    }
+
+    // null if there is no such atom
+    public Entry get(String pred, String... args) {
+        Map<String, Entry> atomsForPred = atoms.get(pred);
+        return atomsForPred == null ? null : atomsForPred.get(key(args));
+    }
+
+    // For atoms printed by print(pred, args); null if there is no such atom
+    public Entry get(String printedAtom) {
+        int start = printedAtom.indexOf('(');
+        Map<String, Entry> atomsForPred = atoms.get(printedAtom.substring(0, start));
+        return atomsForPred == null ? null :
+                atomsForPred.get(printedAtom.substring(start + 1, printedAtom.length() - 1));
+    }
+
+    public boolean contains(String pred, String... args) {
+        return get(pred, args) != null;
+    }
+
+    public int size(String pred) {
+        Map<String, Entry> atomsForPred = atoms.get(pred);
+        return atomsForPred == null ? 0 : atomsForPred.size();
+    }
+
+    // Argument at position argIdx -> the atoms with that argument
+    public Map<String, List<Entry>> groupBy(String pred, int argIdx) {
+        Map<String, List<Entry>> groups = new HashMap<>();
+        for (Entry entry : getAtoms(pred)) {
+            groups.computeIfAbsent(entry.args[argIdx], k -> new ArrayList<>()).add(entry);
+        }
+        return groups;
+    }
+
+}
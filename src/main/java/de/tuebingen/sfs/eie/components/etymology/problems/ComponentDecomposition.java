@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.problems;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Splits the groundings of a problem into independent parts: two open atoms end up in the same component
+// iff they are connected by a chain of ground rules. Observed atoms don't connect anything (their values are
+// fixed), so they are copied into every component that has a ground rule involving them.
+public class ComponentDecomposition {
+
+    public static class Component {
+        public final Set<String> openAtoms = new LinkedHashSet<>();
+        public final Set<String> observedAtoms = new LinkedHashSet<>();
+        public final List<LinearGroundRule> groundRules = new ArrayList<>();
+    }
+
+    // Union-find over the open atoms
+    private final Map<String, String> parent = new HashMap<>();
+
+    private ComponentDecomposition() {
+    }
+
+    // Ground rules without open atoms are ignored.
+    public static List<Component> decompose(Collection<LinearGroundRule> groundRules) {
+        ComponentDecomposition uf = new ComponentDecomposition();
+        for (LinearGroundRule groundRule : groundRules) {
+            for (int i = 0; i < groundRule.atoms.length; i++) {
+                uf.union(groundRule.atoms[0], groundRule.atoms[i]);
+            }
+        }
+        Map<String, Component> components = new LinkedHashMap<>();
+        for (LinearGroundRule groundRule : groundRules) {
+            if (groundRule.atoms.length == 0) {
+                continue;
+            }
+            Component component = components.computeIfAbsent(uf.find(groundRule.atoms[0]), k -> new Component());
+            component.groundRules.add(groundRule);
+            component.openAtoms.addAll(List.of(groundRule.atoms));
+            component.observedAtoms.addAll(List.of(groundRule.observedAtoms));
+        }
+        return new ArrayList<>(components.values());
+    }
+
+    private String find(String atom) {
+        String root = parent.computeIfAbsent(atom, k -> k);
+        while (!root.equals(parent.get(root))) {
+            root = parent.get(root);
+        }
+        // Path compression
+        String current = atom;
+        while (!current.equals(root)) {
+            String next = parent.get(current);
+            parent.put(current, root);
+            current = next;
+        }
+        return root;
+    }
+
+    private void union(String atom1, String atom2) {
+        String root1 = find(atom1);
+        String root2 = find(atom2);
+        if (!root1.equals(root2)) {
+            parent.put(root2, root1);
+        }
+    }
+
+}
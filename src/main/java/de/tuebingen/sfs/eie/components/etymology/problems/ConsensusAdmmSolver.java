@@ -0,0 +1,336 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.problems;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Minimizes the weighted hinge losses of a list of linear ground rules subject to their constraints, over atom
+// values in [0, 1], with consensus ADMM (as in PSL's ADMM reasoner): every ground rule works on a local copy of
+// its atoms, and the copies are pulled towards a shared consensus value per atom.
+// The problem structure is set up once, so the same solver can be re-run with different rule weights or
+// starting points.
+// The optimization can be given a deadline and a listener that receives intermediate values, which makes it
+// usable as an anytime algorithm.
+public class ConsensusAdmmSolver {
+
+    public enum Termination {CONVERGED, MAX_ITERATIONS, DEADLINE, STOPPED, INTERRUPTED}
+
+    // The state of the optimization after some iteration
+    public static class Snapshot {
+        public final int iteration;
+        public final long elapsedMillis;
+        public final double primalResidual;
+        public final double dualResidual;
+        // Open atom -> current value
+        public final Map<String, Double> values;
+
+        Snapshot(int iteration, long elapsedMillis, double primalResidual, double dualResidual,
+                 Map<String, Double> values) {
+            this.iteration = iteration;
+            this.elapsedMillis = elapsedMillis;
+            this.primalResidual = primalResidual;
+            this.dualResidual = dualResidual;
+            this.values = values;
+        }
+    }
+
+    public interface SnapshotListener {
+        // Returns false to stop the optimization with the current values.
+        boolean snapshot(Snapshot snapshot);
+    }
+
+    private static final int DEFAULT_MAX_ITERATIONS = 25000;
+    private static final double DEFAULT_EPSILON = 1e-5;
+    private static final double DEFAULT_STEP_SIZE = 1.0;
+
+    private final String[] atoms;
+    private final Map<String, Integer> atomIndex = new HashMap<>();
+    private final LinearGroundRule.Type[] types;
+    private final String[] ruleNames;
+    private final double[] weights;
+    private final double[] constants;
+    private final int[][] ruleAtoms;
+    private final double[][] coefficients;
+    // Squared norms of the coefficient vectors
+    private final double[] norms;
+    // Number of ground rules per atom
+    private final int[] degree;
+
+    private final double[] consensus;
+    private final double[][] local;
+    private final double[][] duals;
+
+    private int maxIterations = DEFAULT_MAX_ITERATIONS;
+    private double epsilon = DEFAULT_EPSILON;
+    private double stepSize = DEFAULT_STEP_SIZE;
+    // 0 = no time limit
+    private long timeLimit = 0;
+    private int snapshotInterval = 0;
+    private SnapshotListener listener = null;
+
+    private int iterations = 0;
+    private double primalResidual = Double.NaN;
+    private double dualResidual = Double.NaN;
+    private Termination termination = null;
+
+    public ConsensusAdmmSolver(List<LinearGroundRule> groundRules) {
+        int nRules = groundRules.size();
+        types = new LinearGroundRule.Type[nRules];
+        ruleNames = new String[nRules];
+        weights = new double[nRules];
+        constants = new double[nRules];
+        ruleAtoms = new int[nRules][];
+        coefficients = new double[nRules][];
+        norms = new double[nRules];
+        local = new double[nRules][];
+        duals = new double[nRules][];
+        for (int k = 0; k < nRules; k++) {
+            LinearGroundRule groundRule = groundRules.get(k);
+            types[k] = groundRule.type;
+            ruleNames[k] = groundRule.rule;
+            weights[k] = groundRule.weight;
+            constants[k] = groundRule.constant;
+            coefficients[k] = groundRule.coefficients.clone();
+            ruleAtoms[k] = new int[groundRule.atoms.length];
+            for (int i = 0; i < groundRule.atoms.length; i++) {
+                ruleAtoms[k][i] = atomIndex.computeIfAbsent(groundRule.atoms[i], atom -> atomIndex.size());
+                norms[k] += coefficients[k][i] * coefficients[k][i];
+            }
+            local[k] = new double[ruleAtoms[k].length];
+            duals[k] = new double[ruleAtoms[k].length];
+        }
+        atoms = new String[atomIndex.size()];
+        for (Map.Entry<String, Integer> entry : atomIndex.entrySet()) {
+            atoms[entry.getValue()] = entry.getKey();
+        }
+        degree = new int[atoms.length];
+        for (int[] indices : ruleAtoms) {
+            for (int j : indices) {
+                degree[j]++;
+            }
+        }
+        consensus = new double[atoms.length];
+    }
+
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    public void setEpsilon(double epsilon) {
+        this.epsilon = epsilon;
+    }
+
+    public void setStepSize(double stepSize) {
+        this.stepSize = stepSize;
+    }
+
+    // In milliseconds per call of solve(); 0 for no limit
+    public void setTimeLimit(long timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+    // The listener gets a snapshot every snapshotInterval iterations.
+    public void setSnapshotListener(SnapshotListener listener, int snapshotInterval) {
+        this.listener = listener;
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    // New weights for the weighted rules, by rule name (as in EtymologyProblem.RULES). Other rules keep theirs.
+    public void setWeights(Map<String, Double> ruleWeights) {
+        for (int k = 0; k < types.length; k++) {
+            if (types[k] == LinearGroundRule.Type.HINGE && ruleWeights.containsKey(ruleNames[k])) {
+                weights[k] = ruleWeights.get(ruleNames[k]);
+            }
+        }
+    }
+
+    // Starting points for the atoms (atoms that aren't given start at 0)
+    public void setInitialValues(Map<String, Double> values) {
+        for (int j = 0; j < atoms.length; j++) {
+            consensus[j] = Math.min(1.0, Math.max(0.0, values.getOrDefault(atoms[j], 0.0)));
+        }
+        for (int k = 0; k < types.length; k++) {
+            for (int i = 0; i < ruleAtoms[k].length; i++) {
+                local[k][i] = consensus[ruleAtoms[k][i]];
+                duals[k][i] = 0.0;
+            }
+        }
+    }
+
+    public Map<String, Double> solve() {
+        double[] previous = new double[atoms.length];
+        double[] sums = new double[atoms.length];
+        int nLocal = 0;
+        for (int[] indices : ruleAtoms) {
+            nLocal += indices.length;
+        }
+        double tolerance = epsilon * Math.sqrt(Math.max(1, nLocal));
+        long startTime = System.currentTimeMillis();
+        termination = Termination.MAX_ITERATIONS;
+
+        for (iterations = 1; iterations <= maxIterations; iterations++) {
+            // The interrupt flag stays set, for the caller to react to.
+            if (Thread.currentThread().isInterrupted()) {
+                termination = Termination.INTERRUPTED;
+                break;
+            }
+            for (int k = 0; k < types.length; k++) {
+                minimizeLocal(k);
+            }
+
+            System.arraycopy(consensus, 0, previous, 0, atoms.length);
+            Arrays.fill(sums, 0.0);
+            for (int k = 0; k < types.length; k++) {
+                for (int i = 0; i < ruleAtoms[k].length; i++) {
+                    sums[ruleAtoms[k][i]] += local[k][i] + duals[k][i];
+                }
+            }
+            for (int j = 0; j < atoms.length; j++) {
+                if (degree[j] > 0) {
+                    consensus[j] = Math.min(1.0, Math.max(0.0, sums[j] / degree[j]));
+                }
+            }
+
+            double primal = 0.0;
+            for (int k = 0; k < types.length; k++) {
+                for (int i = 0; i < ruleAtoms[k].length; i++) {
+                    double diff = local[k][i] - consensus[ruleAtoms[k][i]];
+                    duals[k][i] += diff;
+                    primal += diff * diff;
+                }
+            }
+            double dual = 0.0;
+            for (int j = 0; j < atoms.length; j++) {
+                double diff = consensus[j] - previous[j];
+                dual += degree[j] * diff * diff;
+            }
+            primalResidual = Math.sqrt(primal);
+            dualResidual = stepSize * Math.sqrt(dual);
+            if (primalResidual < tolerance && dualResidual < tolerance) {
+                termination = Termination.CONVERGED;
+                break;
+            }
+            long elapsed = System.currentTimeMillis() - startTime;
+            if (listener != null && snapshotInterval > 0 && iterations % snapshotInterval == 0
+                    && !listener.snapshot(new Snapshot(iterations, elapsed, primalResidual, dualResidual,
+                    getValues()))) {
+                termination = Termination.STOPPED;
+                break;
+            }
+            if (timeLimit > 0 && elapsed >= timeLimit) {
+                termination = Termination.DEADLINE;
+                break;
+            }
+        }
+        // The loop counter ends up one too high if the iterations ran out.
+        iterations = Math.min(iterations, maxIterations);
+        return getValues();
+    }
+
+    // argmin_y f_k(y) + stepSize/2 * ||y - (consensus - dual)||^2
+    private void minimizeLocal(int k) {
+        int[] indices = ruleAtoms[k];
+        double[] y = local[k];
+        double[] a = coefficients[k];
+        double value = constants[k];
+        for (int i = 0; i < indices.length; i++) {
+            y[i] = consensus[indices[i]] - duals[k][i];
+            value += a[i] * y[i];
+        }
+        switch (types[k]) {
+            case HINGE:
+                if (value <= 0.0) {
+                    return;
+                }
+                // Move along the gradient of the linear part ...
+                double step = weights[k] / stepSize;
+                if (value - step * norms[k] >= 0.0) {
+                    for (int i = 0; i < y.length; i++) {
+                        y[i] -= step * a[i];
+                    }
+                    return;
+                }
+                // ... unless that would overshoot the hinge, in which case we end up on it.
+                project(y, a, value, norms[k]);
+                return;
+            case LEQ:
+                if (value > 0.0) {
+                    project(y, a, value, norms[k]);
+                }
+                return;
+            default:
+                project(y, a, value, norms[k]);
+        }
+    }
+
+    // Projection onto the hyperplane constant + a * y = 0
+    private static void project(double[] y, double[] a, double value, double norm) {
+        if (norm == 0.0) {
+            return;
+        }
+        double factor = value / norm;
+        for (int i = 0; i < y.length; i++) {
+            y[i] -= factor * a[i];
+        }
+    }
+
+    public Map<String, Double> getValues() {
+        Map<String, Double> values = new HashMap<>();
+        for (int j = 0; j < atoms.length; j++) {
+            values.put(atoms[j], consensus[j]);
+        }
+        return values;
+    }
+
+    // Weighted sum of the hinge losses for the current consensus values
+    public double objective() {
+        double objective = 0.0;
+        for (int k = 0; k < types.length; k++) {
+            if (types[k] != LinearGroundRule.Type.HINGE) continue;
+            double value = constants[k];
+            for (int i = 0; i < ruleAtoms[k].length; i++) {
+                value += coefficients[k][i] * consensus[ruleAtoms[k][i]];
+            }
+            objective += weights[k] * Math.max(0.0, value);
+        }
+        return objective;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    // null before the first call of solve()
+    public Termination getTermination() {
+        return termination;
+    }
+
+    public double getPrimalResidual() {
+        return primalResidual;
+    }
+
+    public double getDualResidual() {
+        return dualResidual;
+    }
+
+    public int getNumberOfAtoms() {
+        return atoms.length;
+    }
+
+}
@@ -0,0 +1,481 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.problems;
+
+import de.tuebingen.sfs.eie.components.etymology.talk.rule.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+// Grounds the rules of the etymology model (see talk/rule) directly from the atoms of a problem instead of
+// via generic database joins. Each rule is instantiated by walking only the atoms it can connect:
+// Einh atoms go from child to parent forms, Eloa atoms follow the contact links, Fhom atoms are limited to the
+// homologue pegs of the query, and Fsim atoms are looked up per form.
+// Groundings without open atoms, and groundings that can't be violated by any values of their open atoms
+// (e.g. transitivity triples of three observed Fsim atoms), are skipped and only counted.
+// As in PSL, atoms that aren't part of the problem count as 0.
+// This is the only grounding of the model: EtymologyProblem.solve hands its ground rules to PSL's reasoner
+// (see PslGrounding), and the in-memory paths (small problems, anytime inference, re-solving with new weights,
+// weight learning, component decomposition) solve them directly. It has to be kept in sync with the rules in
+// talk/rule by hand; EtymologyGrounderTest checks it against the PSL rule strings.
+public class EtymologyGrounder {
+
+    private static final double EPSILON = 1e-9;
+
+    private final AtomInventory atoms;
+    private final EtymologyProblemConfig config;
+    private final boolean canonicalFsim;
+
+    private final Map<String, Long> nSkipped = new LinkedHashMap<>();
+
+    public EtymologyGrounder(AtomInventory atoms, EtymologyProblemConfig config) {
+        this.atoms = atoms;
+        this.config = config;
+        this.canonicalFsim = config.isCanonicalFsim();
+    }
+
+    public List<LinearGroundRule> ground() {
+        List<LinearGroundRule> groundRules = new ArrayList<>();
+        nSkipped.clear();
+        if (config.include(EinhOrEloaOrEunkConstraint.NAME)) groundEinhOrEloaOrEunk(groundRules);
+        if (config.include(EloaPlusEloaConstraint.NAME)) groundEloaPlusEloa(groundRules);
+        if (config.include(FhomDistributionConstraint.NAME)) groundFhomDistribution(groundRules);
+        if (!canonicalFsim && config.include(FsimSymmetryConstraint.NAME)) groundFsimSymmetry(groundRules);
+        if (config.include(FsimTransitivityConstraint.NAME)) groundFsimTransitivity(groundRules);
+        // Always part of the model (see EtymologyProblem.addInteractionRules)
+        groundEetyToFhom("Einh", groundRules);
+        groundEetyToFhom("Eloa", groundRules);
+        if (config.include(EunkPriorRule.NAME)) groundPrior(EunkPriorRule.NAME, "Eunk", groundRules);
+        if (config.include(EloaPriorRule.NAME)) groundPrior(EloaPriorRule.NAME, "Eloa", groundRules);
+        if (config.include(EinhToFsimRule.NAME)) groundEinhToFsim(groundRules);
+        if (config.include(FsimToFsimRule.NAME)) groundFsimToFsim(groundRules);
+        if (config.include("EloaToFsim")) groundEloaToFsim(groundRules);
+        if (config.include(FhomChildToParentRule.NAME)) groundFhomChildToParent(groundRules);
+        if (config.include(FhomParentToChildRule.NAME)) groundFhomParentToChild(groundRules);
+        if (config.include(FhomToEinhRule.NAME)) groundFhomToEinh(groundRules);
+        if (config.include(FhomToEloaRule.NAME)) groundFhomToEloa(groundRules);
+        return groundRules;
+    }
+
+    // Rule name -> number of groundings that were skipped by the last call of ground()
+    public Map<String, Long> getSkippedGroundings() {
+        return nSkipped;
+    }
+
+    // ---------------
+    // Constraints
+    // ---------------
+
+    // Einh(X, +Y) + Eloa(X, +Z) + Eunk(X) = 1 .
+    private void groundEinhOrEloaOrEunk(List<LinearGroundRule> groundRules) {
+        Map<String, List<AtomInventory.Entry>> einh = atoms.groupBy("Einh", 0);
+        Map<String, List<AtomInventory.Entry>> eloa = atoms.groupBy("Eloa", 0);
+        Set<String> forms = new LinkedHashSet<>(einh.keySet());
+        forms.addAll(eloa.keySet());
+        for (AtomInventory.Entry eunk : atoms.getAtoms("Eunk")) {
+            forms.add(eunk.args[0]);
+        }
+        for (String x : forms) {
+            Builder builder = new Builder(EinhOrEloaOrEunkConstraint.NAME, -1.0);
+            for (AtomInventory.Entry entry : einh.getOrDefault(x, Collections.emptyList())) {
+                builder.term(1.0, "Einh", entry.args);
+            }
+            for (AtomInventory.Entry entry : eloa.getOrDefault(x, Collections.emptyList())) {
+                builder.term(1.0, "Eloa", entry.args);
+            }
+            builder.term(1.0, "Eunk", x);
+            builder.emit(LinearGroundRule.Type.EQ, Double.NaN, groundRules);
+        }
+    }
+
+    // Eloa(X, Y) + Eloa(Y, X) <= 1 .
+    private void groundEloaPlusEloa(List<LinearGroundRule> groundRules) {
+        for (AtomInventory.Entry eloa : atoms.getAtoms("Eloa")) {
+            String x = eloa.args[0];
+            String y = eloa.args[1];
+            if (x.compareTo(y) > 0 && atoms.contains("Eloa", y, x)) {
+                // Same grounding as for (Y, X)
+                continue;
+            }
+            new Builder(EloaPlusEloaConstraint.NAME, -1.0).term(1.0, "Eloa", x, y).term(1.0, "Eloa", y, x)
+                    .emit(LinearGroundRule.Type.LEQ, Double.NaN, groundRules);
+        }
+    }
+
+    // Fhom(X,+H) = 1.
+    private void groundFhomDistribution(List<LinearGroundRule> groundRules) {
+        for (Map.Entry<String, List<AtomInventory.Entry>> fhoms : atoms.groupBy("Fhom", 0).entrySet()) {
+            Builder builder = new Builder(FhomDistributionConstraint.NAME, -1.0);
+            for (AtomInventory.Entry fhom : fhoms.getValue()) {
+                builder.term(1.0, "Fhom", fhom.args);
+            }
+            builder.emit(LinearGroundRule.Type.EQ, Double.NaN, groundRules);
+        }
+    }
+
+    // Fsim(X,Y) = Fsim(Y,X) .
+    private void groundFsimSymmetry(List<LinearGroundRule> groundRules) {
+        for (AtomInventory.Entry fsim : atoms.getAtoms("Fsim")) {
+            String x = fsim.args[0];
+            String y = fsim.args[1];
+            if (x.equals(y) || (x.compareTo(y) > 0 && atoms.contains("Fsim", y, x))) {
+                continue;
+            }
+            new Builder(FsimSymmetryConstraint.NAME, 0.0).term(1.0, "Fsim", x, y).term(-1.0, "Fsim", y, x)
+                    .emit(LinearGroundRule.Type.EQ, Double.NaN, groundRules);
+        }
+    }
+
+    private void groundFsimTransitivity(List<LinearGroundRule> groundRules) {
+        String rule = FsimTransitivityConstraint.NAME;
+        if (!canonicalFsim) {
+            // Fsim(X,Y) & Fsim(Y,Z) & (X != Y) & (X != Z) & (Y != Z) -> Fsim(X,Z) .
+            Map<String, List<AtomInventory.Entry>> fsimOut = atoms.groupBy("Fsim", 0);
+            for (AtomInventory.Entry xy : atoms.getAtoms("Fsim")) {
+                String x = xy.args[0];
+                String y = xy.args[1];
+                if (x.equals(y)) continue;
+                for (AtomInventory.Entry yz : fsimOut.getOrDefault(y, Collections.emptyList())) {
+                    String z = yz.args[1];
+                    if (z.equals(x) || z.equals(y)) continue;
+                    implication(rule, "Fsim", x, z).body("Fsim", x, y).body("Fsim", y, z)
+                            .emit(LinearGroundRule.Type.LEQ, Double.NaN, groundRules);
+                }
+            }
+            return;
+        }
+
+        // One variant per position of the head in the triple X < Y < Z (see FsimTransitivityConstraint):
+        // Fsim(X,Y) & Fsim(Y,Z) -> Fsim(X,Z), Fsim(X,Z) & Fsim(Y,Z) -> Fsim(X,Y), Fsim(X,Y) & Fsim(X,Z) -> Fsim(Y,Z)
+        Map<String, Set<String>> neighbours = fsimNeighbours();
+        Set<String> triples = new HashSet<>();
+        for (Map.Entry<String, Set<String>> entry : neighbours.entrySet()) {
+            List<String> others = new ArrayList<>(entry.getValue());
+            for (int i = 0; i < others.size(); i++) {
+                for (int j = i + 1; j < others.size(); j++) {
+                    String[] triple = new String[]{entry.getKey(), others.get(i), others.get(j)};
+                    // Canonical order, see EtymologyRuleSet.inCanonicalOrder
+                    Arrays.sort(triple);
+                    if (!triples.add(String.join(" ", triple))) continue;
+                    String x = triple[0];
+                    String y = triple[1];
+                    String z = triple[2];
+                    boolean xy = atoms.contains("Fsim", x, y);
+                    boolean yz = atoms.contains("Fsim", y, z);
+                    boolean xz = atoms.contains("Fsim", x, z);
+                    if (xy && yz) implication(rule, "Fsim", x, z).variant(rule + "Canonical1")
+                            .body("Fsim", x, y).body("Fsim", y, z)
+                            .emit(LinearGroundRule.Type.LEQ, Double.NaN, groundRules);
+                    if (xz && yz) implication(rule, "Fsim", x, y).variant(rule + "Canonical2")
+                            .body("Fsim", x, z).body("Fsim", y, z)
+                            .emit(LinearGroundRule.Type.LEQ, Double.NaN, groundRules);
+                    if (xy && xz) implication(rule, "Fsim", y, z).variant(rule + "Canonical3")
+                            .body("Fsim", x, y).body("Fsim", x, z)
+                            .emit(LinearGroundRule.Type.LEQ, Double.NaN, groundRules);
+                }
+            }
+        }
+    }
+
+    // Eety(X,Y) & Fhom(Y,H) -> Fhom(X,H) .
+    private void groundEetyToFhom(String eetyType, List<LinearGroundRule> groundRules) {
+        String rule = EetyToFhomConstraint.NAME.formatted(eetyType);
+        Map<String, List<AtomInventory.Entry>> fhomOut = atoms.groupBy("Fhom", 0);
+        for (AtomInventory.Entry eety : atoms.getAtoms(eetyType)) {
+            String x = eety.args[0];
+            String y = eety.args[1];
+            for (AtomInventory.Entry fhom : fhomOut.getOrDefault(y, Collections.emptyList())) {
+                String h = fhom.args[1];
+                implication(rule, "Fhom", x, h).body(eetyType, x, y).body("Fhom", y, h)
+                        .emit(LinearGroundRule.Type.LEQ, Double.NaN, groundRules);
+            }
+        }
+    }
+
+    // ---------------
+    // Weighted rules
+    // ---------------
+
+    // ~Eunk(X), ~Eloa(X, Y)
+    private void groundPrior(String rule, String pred, List<LinearGroundRule> groundRules) {
+        double weight = EtymologyProblem.ruleWeight(config, rule);
+        for (AtomInventory.Entry entry : atoms.getAtoms(pred)) {
+            new Builder(rule, 0.0).term(1.0, pred, entry.args).emit(LinearGroundRule.Type.HINGE, weight, groundRules);
+        }
+    }
+
+    // Einh(X,Z) & Einh(Y,Z) & (X != Y) -> Fsim(X,Y)  (canonical: X % Y)
+    private void groundEinhToFsim(List<LinearGroundRule> groundRules) {
+        double weight = EtymologyProblem.groundedRuleWeight(config, EinhToFsimRule.NAME);
+        for (Map.Entry<String, List<AtomInventory.Entry>> siblings : atoms.groupBy("Einh", 1).entrySet()) {
+            String z = siblings.getKey();
+            for (AtomInventory.Entry xz : siblings.getValue()) {
+                for (AtomInventory.Entry yz : siblings.getValue()) {
+                    String x = xz.args[0];
+                    String y = yz.args[0];
+                    if (x.equals(y) || (canonicalFsim && !EtymologyRuleSet.inCanonicalOrder(x, y))) continue;
+                    implication(EinhToFsimRule.NAME, "Fsim", x, y).body("Einh", x, z).body("Einh", y, z)
+                            .emit(LinearGroundRule.Type.HINGE, weight, groundRules);
+                }
+            }
+        }
+    }
+
+    // Fsim(X,Y) & Einh(X,W) & Einh(Y,Z) & (W != Z) -> Fsim(W,Z)  (canonical: head with ordered arguments)
+    private void groundFsimToFsim(List<LinearGroundRule> groundRules) {
+        double weight = EtymologyProblem.groundedRuleWeight(config, FsimToFsimRule.NAME);
+        Map<String, List<AtomInventory.Entry>> einhOut = atoms.groupBy("Einh", 0);
+        for (AtomInventory.Entry xy : atoms.getAtoms("Fsim")) {
+            String x = xy.args[0];
+            String y = xy.args[1];
+            for (AtomInventory.Entry xw : einhOut.getOrDefault(x, Collections.emptyList())) {
+                for (AtomInventory.Entry yz : einhOut.getOrDefault(y, Collections.emptyList())) {
+                    String w = xw.args[1];
+                    String z = yz.args[1];
+                    if (w.equals(z)) continue;
+                    String[] head = fsimArgs(w, z);
+                    // Canonical variants: (W % Z) -> Fsim(W,Z), (Z % W) & (X != Y) -> Fsim(Z,W)
+                    // (The self-pair Fsim(X,X) only counts once per pair of sources.)
+                    boolean swapped = canonicalFsim && !head[0].equals(w);
+                    if (swapped && x.equals(y)) continue;
+                    String variant = !canonicalFsim ? FsimToFsimRule.NAME :
+                            FsimToFsimRule.NAME + "Canonical" + (swapped ? 2 : 1);
+                    implication(FsimToFsimRule.NAME, "Fsim", head).variant(variant).body("Fsim", x, y)
+                            .body("Einh", x, w).body("Einh", y, z)
+                            .emit(LinearGroundRule.Type.HINGE, weight, groundRules);
+                }
+            }
+        }
+    }
+
+    // Eloa(X,Y) & Fsim(X, Z) & Y != Z & X != Z -> Fsim(X,Y)  (canonical: Fsim atoms with ordered arguments)
+    private void groundEloaToFsim(List<LinearGroundRule> groundRules) {
+        double weight = EtymologyProblem.ruleWeight(config, "EloaToFsim");
+        Map<String, Set<String>> neighbours = canonicalFsim ? fsimNeighbours() : null;
+        Map<String, List<AtomInventory.Entry>> fsimOut = canonicalFsim ? null : atoms.groupBy("Fsim", 0);
+        for (AtomInventory.Entry eloa : atoms.getAtoms("Eloa")) {
+            String x = eloa.args[0];
+            String y = eloa.args[1];
+            List<String> others = new ArrayList<>();
+            if (canonicalFsim) {
+                others.addAll(neighbours.getOrDefault(x, Collections.emptySet()));
+            } else {
+                for (AtomInventory.Entry xz : fsimOut.getOrDefault(x, Collections.emptyList())) {
+                    others.add(xz.args[1]);
+                }
+            }
+            for (String z : others) {
+                if (z.equals(y) || z.equals(x)) continue;
+                // Canonical variants (see EtymologyRuleSet.ELOA_TO_FSIM_CANONICAL): by the argument order of the
+                // head, then of the Fsim atom in the body
+                String variant = "EloaToFsimRelation";
+                if (canonicalFsim) {
+                    variant += (EtymologyRuleSet.inCanonicalOrder(x, y) ? 1 : 3)
+                            + (EtymologyRuleSet.inCanonicalOrder(x, z) ? 0 : 1);
+                }
+                implication("EloaToFsim", "Fsim", fsimArgs(x, y)).variant(variant).body("Eloa", x, y)
+                        .body("Fsim", fsimArgs(x, z)).emit(LinearGroundRule.Type.HINGE, weight, groundRules);
+            }
+        }
+    }
+
+    // Fhom(X,H) & Xinh(X,Z) -> Fhom(Z,H)
+    private void groundFhomChildToParent(List<LinearGroundRule> groundRules) {
+        double weight = EtymologyProblem.ruleWeight(config, FhomChildToParentRule.NAME);
+        Map<String, List<AtomInventory.Entry>> fhomOut = atoms.groupBy("Fhom", 0);
+        for (AtomInventory.Entry xinh : atoms.getAtoms("Xinh")) {
+            String x = xinh.args[0];
+            String z = xinh.args[1];
+            for (AtomInventory.Entry fhom : fhomOut.getOrDefault(x, Collections.emptyList())) {
+                String h = fhom.args[1];
+                implication(FhomChildToParentRule.NAME, "Fhom", z, h).body("Fhom", x, h).body("Xinh", x, z)
+                        .emit(LinearGroundRule.Type.HINGE, weight, groundRules);
+            }
+        }
+    }
+
+    // Fhom(Z,H) & Xinh(X,Z) -> Fhom(X,H)
+    private void groundFhomParentToChild(List<LinearGroundRule> groundRules) {
+        double weight = EtymologyProblem.ruleWeight(config, FhomParentToChildRule.NAME);
+        Map<String, List<AtomInventory.Entry>> fhomOut = atoms.groupBy("Fhom", 0);
+        for (AtomInventory.Entry xinh : atoms.getAtoms("Xinh")) {
+            String x = xinh.args[0];
+            String z = xinh.args[1];
+            for (AtomInventory.Entry fhom : fhomOut.getOrDefault(z, Collections.emptyList())) {
+                String h = fhom.args[1];
+                implication(FhomParentToChildRule.NAME, "Fhom", x, h).body("Fhom", z, h).body("Xinh", x, z)
+                        .emit(LinearGroundRule.Type.HINGE, weight, groundRules);
+            }
+        }
+    }
+
+    // Fhom(X,H) & Fhom(Y,H) & Xinh(X,Y) -> Einh(X,Y)
+    private void groundFhomToEinh(List<LinearGroundRule> groundRules) {
+        double weight = EtymologyProblem.ruleWeight(config, FhomToEinhRule.NAME);
+        Map<String, List<AtomInventory.Entry>> fhomOut = atoms.groupBy("Fhom", 0);
+        for (AtomInventory.Entry xinh : atoms.getAtoms("Xinh")) {
+            String x = xinh.args[0];
+            String y = xinh.args[1];
+            for (AtomInventory.Entry fhom : fhomOut.getOrDefault(x, Collections.emptyList())) {
+                String h = fhom.args[1];
+                if (!atoms.contains("Fhom", y, h)) continue;
+                implication(FhomToEinhRule.NAME, "Einh", x, y).body("Fhom", x, h).body("Fhom", y, h)
+                        .body("Xinh", x, y).emit(LinearGroundRule.Type.HINGE, weight, groundRules);
+            }
+        }
+    }
+
+    // Fhom(X,H) & ~Fhom(Y,H) & Xinh(X,Y) & Xloa(X,Z) -> Eloa(X,Z)
+    private void groundFhomToEloa(List<LinearGroundRule> groundRules) {
+        double weight = EtymologyProblem.ruleWeight(config, FhomToEloaRule.NAME);
+        Map<String, List<AtomInventory.Entry>> fhomOut = atoms.groupBy("Fhom", 0);
+        Map<String, List<AtomInventory.Entry>> xloaOut = atoms.groupBy("Xloa", 0);
+        for (AtomInventory.Entry xinh : atoms.getAtoms("Xinh")) {
+            String x = xinh.args[0];
+            String y = xinh.args[1];
+            for (AtomInventory.Entry fhom : fhomOut.getOrDefault(x, Collections.emptyList())) {
+                String h = fhom.args[1];
+                for (AtomInventory.Entry xloa : xloaOut.getOrDefault(x, Collections.emptyList())) {
+                    String z = xloa.args[1];
+                    implication(FhomToEloaRule.NAME, "Eloa", x, z).body("Fhom", x, h).negatedBody("Fhom", y, h)
+                            .body("Xinh", x, y).body("Xloa", x, z)
+                            .emit(LinearGroundRule.Type.HINGE, weight, groundRules);
+                }
+            }
+        }
+    }
+
+    // ---------------
+    // Helpers
+    // ---------------
+
+    // Form -> the forms it shares an Fsim atom with (in either argument position)
+    private Map<String, Set<String>> fsimNeighbours() {
+        Map<String, Set<String>> neighbours = new LinkedHashMap<>();
+        for (AtomInventory.Entry fsim : atoms.getAtoms("Fsim")) {
+            if (fsim.args[0].equals(fsim.args[1])) continue;
+            neighbours.computeIfAbsent(fsim.args[0], k -> new LinkedHashSet<>()).add(fsim.args[1]);
+            neighbours.computeIfAbsent(fsim.args[1], k -> new LinkedHashSet<>()).add(fsim.args[0]);
+        }
+        return neighbours;
+    }
+
+    // The arguments of the Fsim atom for a pair of forms, in ascending order if Fsim is stored canonically
+    private String[] fsimArgs(String form1, String form2) {
+        if (canonicalFsim && EtymologyRuleSet.inCanonicalOrder(form2, form1)) {
+            return new String[]{form2, form1};
+        }
+        return new String[]{form1, form2};
+    }
+
+    // Distance to satisfaction of body -> head: sum(body truth values) - (#body literals - 1) - head
+    private Builder implication(String rule, String headPred, String... headArgs) {
+        return new Builder(rule, 1.0).term(-1.0, headPred, headArgs);
+    }
+
+    private class Builder {
+        private final String rule;
+        private String pslRule;
+        private final Map<String, Double> coefficients = new LinkedHashMap<>();
+        private final Set<String> observed = new LinkedHashSet<>();
+        private final List<String> terms = new ArrayList<>();
+        private final List<Double> termCoefficients = new ArrayList<>();
+        // Without the values of the observed atoms
+        private double termConstant;
+        private double observedSum = 0.0;
+
+        Builder(String rule, double constant) {
+            this.rule = rule;
+            this.pslRule = rule;
+            this.termConstant = constant;
+        }
+
+        // The name of the PSL rule for the grounding, if it differs from the rule name (canonical variants)
+        Builder variant(String pslRule) {
+            this.pslRule = pslRule;
+            return this;
+        }
+
+        Builder term(double coefficient, String pred, String... args) {
+            AtomInventory.Entry entry = atoms.get(pred, args);
+            if (entry == null) {
+                return this;
+            }
+            String atom = AtomInventory.print(pred, args);
+            terms.add(atom);
+            termCoefficients.add(coefficient);
+            if (entry.isObserved()) {
+                observedSum += coefficient * entry.value;
+                observed.add(atom);
+            } else {
+                coefficients.merge(atom, coefficient, Double::sum);
+            }
+            return this;
+        }
+
+        Builder body(String pred, String... args) {
+            termConstant -= 1.0;
+            return term(1.0, pred, args);
+        }
+
+        // ~A has the truth value 1 - A
+        Builder negatedBody(String pred, String... args) {
+            return term(-1.0, pred, args);
+        }
+
+        void emit(LinearGroundRule.Type type, double weight, List<LinearGroundRule> groundRules) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Interrupted while grounding.");
+            }
+            double constant = termConstant + observedSum;
+            coefficients.values().removeIf(coefficient -> coefficient == 0.0);
+            boolean trivial = coefficients.isEmpty();
+            if (!trivial && type != LinearGroundRule.Type.EQ) {
+                // Largest possible value of the expression for atom values in [0, 1]
+                double max = constant;
+                for (double coefficient : coefficients.values()) {
+                    max += Math.max(0.0, coefficient);
+                }
+                trivial = max <= EPSILON;
+            }
+            if (trivial) {
+                nSkipped.merge(rule, 1L, Long::sum);
+                return;
+            }
+            String[] atomNames = coefficients.keySet().toArray(new String[0]);
+            double[] coefficientValues = new double[atomNames.length];
+            for (int i = 0; i < atomNames.length; i++) {
+                coefficientValues[i] = coefficients.get(atomNames[i]);
+            }
+            double[] termCoefficientValues = new double[termCoefficients.size()];
+            for (int i = 0; i < termCoefficientValues.length; i++) {
+                termCoefficientValues[i] = termCoefficients.get(i);
+            }
+            groundRules.add(new LinearGroundRule(rule, pslRule, type, weight, atomNames, coefficientValues, constant,
+                    observed.toArray(new String[0]), terms.toArray(new String[0]), termCoefficientValues,
+                    termConstant));
+        }
+    }
+
+}
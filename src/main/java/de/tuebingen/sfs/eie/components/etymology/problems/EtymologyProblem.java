@@ -22,23 +22,52 @@ import de.tuebingen.sfs.psl.engine.AtomTemplate;
 import de.tuebingen.sfs.psl.engine.InferenceResult;
 import de.tuebingen.sfs.psl.engine.PslProblem;
 import de.tuebingen.sfs.psl.engine.RuleAtomGraph;
-import de.tuebingen.sfs.psl.talk.rule.TalkingRuleOrConstraint;
 import de.tuebingen.sfs.psl.util.log.InferenceLogger;
 import org.linqs.psl.model.rule.GroundRule;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static de.tuebingen.sfs.psl.engine.AtomTemplate.ANY_CONST;
 
 public class EtymologyProblem extends PslProblem {
 
     public static boolean verbose = true;
+    // How far the in-memory model may deviate from the values of PSL's inference (see resolveWithWeights)
+    static final double CONSISTENCY_TOLERANCE = 0.01;
 
     Set<String> fixedAtoms = new HashSet<>();
     Set<String> hiddenAtoms = new HashSet<>();
+    // The atoms added so far, and the rules registered by addInteractionRules.
+    // (No initializers, since the superclass constructor might already add rules.)
+    private AtomInventory inventory;
+    private EtymologyRuleSet registeredRuleSet;
+    private Set<String> registeredRules;
+    // Atoms removed from the inventory that are still in the database partitions (see removeAtoms)
+    private Set<String> removedAtoms;
+    // Rules dropped to stay within the grounding budget (see dropRules). They are kept here rather than in the
+    // ignore list of the config, which the caller may reuse for other problems.
+    private Set<String> droppedRules;
+    // The result of the last inference (for the atoms as of the modification count), and the in-memory grounding for
+    // re-solving it with other rule weights (once it has reproduced that result, see resolveWithWeights)
+    private Solution lastSolution;
+    private int lastSolutionModCount;
+    private ConsensusAdmmSolver reweightSolver;
+    // In-memory inference: initial values of the warm-started targets, and the receiver of intermediate results
+    private Map<String, Double> warmStartValues;
+    private ConsensusAdmmSolver.SnapshotListener snapshotListener;
 
     // Used by the config GUI:
     public static Set<String> RULES = new HashSet<>() {{
@@ -60,6 +89,32 @@ public class EtymologyProblem extends PslProblem {
         add(FhomToEloaRule.NAME);
     }};
 
+    // Weights of the weighted rules if the config doesn't specify any
+    public static final Map<String, Double> DEFAULT_RULE_WEIGHTS = Map.of(EunkPriorRule.NAME, 2.5,
+            EloaPriorRule.NAME, 0.5, EinhToFsimRule.NAME, 2.0, FsimToFsimRule.NAME, 1.0, "EloaToFsim", 1.0,
+            FhomChildToParentRule.NAME, 0.6, FhomParentToChildRule.NAME, 0.2, FhomToEinhRule.NAME, 0.4,
+            FhomToEloaRule.NAME, 1.0);
+
+    // Deleted from the problem's partitions after each inference (see declareAtomsForCleanUp)
+    public static final Set<String> CLEANED_UP_PREDICATES = Set.of("Xinh", "Xloa", "Fhom", "Fsim");
+    private static final Map<String, Integer> atomCleanUps = new HashMap<>();
+    // Problem ID -> results of the last inference, the default source of warm start values for the next one
+    private static final int MAX_PREVIOUS_RESULTS = 16;
+    private static final Map<String, EtymologyResultStore> previousResults = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, EtymologyResultStore> eldest) {
+            return size() > MAX_PREVIOUS_RESULTS;
+        }
+    };
+
+    // The output settings of the rule-atom graph are JVM-wide. They are set once here rather than before each
+    // inference, since problems are solved concurrently.
+    // Building the graph itself is serialized (see toResult).
+    static {
+        RuleAtomGraph.GROUNDING_OUTPUT = true;
+        RuleAtomGraph.ATOM_VALUE_OUTPUT = true;
+    }
+
     // TODO make sure the config sets the dbmanager and problemId when it's initialized
     // (old to-do)
     public EtymologyProblem(EtymologyProblemConfig config) {
@@ -95,99 +150,29 @@ public class EtymologyProblem extends PslProblem {
     public void pregenerateAtoms() {
     }
 
+    // The registered rules only explain the ground rules in the rule-atom graph: the solvers get the ground rules
+    // with the compiled PSL rules of the rule set for the current config (see PslGrounding). So rules are never
+    // re-registered. If the rule configuration has changed since the last call, only the rules that haven't been
+    // registered yet are added; dropped rules and changed weights don't need any registration.
     @Override
     public void addInteractionRules() {
-        EtymologyProblemConfig config = (EtymologyProblemConfig) super.getConfig();
-
-        // -------------------
-        // CONSTRAINTS
-        for (TalkingRuleOrConstraint constraint : new TalkingRuleOrConstraint[]{new EinhOrEloaOrEunkConstraint(this),
-                new EloaPlusEloaConstraint(this), new FsimSymmetryConstraint(this),
-                new FsimTransitivityConstraint(this), new FhomDistributionConstraint(this)}) {
-
-            if (config.include(constraint.getName())) {
-                addRule(constraint);
+        EtymologyRuleSet ruleSet = EtymologyRuleSet.forConfig(getRuleConfig());
+        if (ruleSet == registeredRuleSet) {
+            return;
+        }
+        boolean added = false;
+        for (EtymologyRuleSet.RuleSpec rule : ruleSet.getRules()) {
+            if (getRegisteredRules().add(rule.name)) {
+                rule.addTo(this);
+                added = true;
             }
         }
-        //A loanword relation implies that the donor and the recipient form must be from the same homologue set.
-        addRule(new EetyToFhomConstraint("Eloa", this));
-        //An inheritance relation implies that the two forms must be from the same homologue set.
-        addRule(new EetyToFhomConstraint("Einh", this));
-
-        // -------------------
-        // PRIORS
-
-        // Biases against borrowing and against unknown etymologies
-        if (config.include(EunkPriorRule.NAME))
-            addRule(new EunkPriorRule(this, config.getRuleWeightOrDefault(EunkPriorRule.NAME, 2.5)));
-        if (config.include(EloaPriorRule.NAME))
-            addRule(new EloaPriorRule(this, config.getRuleWeightOrDefault(EloaPriorRule.NAME, 0.5)));
-
-        // -------------------
-        // "REGULAR" WEIGHTED RULES
-
-        // If two forms are inherited from the same form, they should be similar:
-        if (config.include(EinhToFsimRule.NAME))
-            addRule(new EinhToFsimRule(this, config.getRuleWeightOrDefault(EinhToFsimRule.NAME, 2.0)));
-        // If two forms are similar and inherited from different sources, those source
-        // words should be similar to one another too.
-        if (config.include(FsimToFsimRule.NAME))
-            addRule(new FsimToFsimRule(this, config.getRuleWeightOrDefault(FsimToFsimRule.NAME, 1.0)));
-
-        //A borrowed form should be more similar to its donor than to any other word.
-        // TODO proper class w/ verbalization
-        if (config.include("EloaToFsim"))
-            addRule("EloaToFsimRelation", "1: Eloa(X,Y) & Fsim(X, Z) & Y != Z & X != Z -> Fsim(X,Y)");
-
-        // Propagating evidence along unary branches, with negative evidence being weaker
-        if (config.include(FhomChildToParentRule.NAME))
-            addRule(new FhomChildToParentRule(this, config.getRuleWeightOrDefault(FhomChildToParentRule.NAME, 0.6)));
-        if (config.include(FhomParentToChildRule.NAME))
-            addRule(new FhomParentToChildRule(this, config.getRuleWeightOrDefault(FhomParentToChildRule.NAME, 0.2)));
-
-        // If both parent and child share the same homologue set, that provides some evidence of inheritance
-        if (config.include(FhomToEinhRule.NAME))
-            addRule(new FhomToEinhRule(this, config.getRuleWeightOrDefault(FhomToEinhRule.NAME, 0.4)));
-        // If there is a doubt about the reconstructability of a homologue set in the parent, an available
-        // loanword etymology becomes much more likely
-        if (config.include(FhomToEloaRule.NAME))
-            addRule(new FhomToEloaRule(this, config.getRuleWeightOrDefault(FhomToEloaRule.NAME, 1.0)));
-
-        // -------------------
-        // Experimental rules:
-
-        // If two forms are similar and might be inherited from a common source, it's
-        // likely that they really were.
-        //addRule("FsimToEinh", "1: Fsim(X,Y) & Xinh(X,Z) & Xinh(Y,Z) & (X != Y) -> Einh(X,Z)");
-        //If a borrowing relation between two forms is possible and they are quite similar, this makes a borrowing likely.
-        //addRule("FsimToEloa", "2: Fsim(X,Y) & Xloa(X,Y) -> Eloa(X,Y)");
-
-        // If a word is more similar to a word in a contact language than to its
-        // reconstructed ancestor, that makes it more likely to be a loan:
-        //addRule("EloaAndFsim", "1: Xloa(X,W) + Eloa(X,W) >= Xinh(X,Z) + Fsim(X,W) - Fsim(X,Z)");
-
-        //An inherited form should be more similar to its immediate ancestor than to any other word.
-        //addRule("EinhToFsimRelation", "1: Einh(X,Y) & Fsim(X, Z) & X != Z & Y != Z -> Fsim(X,Y)");
-
-        // Sister forms should be less similar than either is to their common parent
-        // form:
-        //addRule("FsimFamily", "1: (X != Y) + Xinh(X,Z) + Xinh(Y,Z) + Fsim(X,Y) <= 3 + Fsim(X,Z)");
-        // The distance between two sister words must not exceed the sum of distances to
-        // the common ancestor, reusing the grounding atoms to create the constant 2:
-        //addRule("FsimTriangle", "1: (X != Y) + Xinh(X,Z) + Xinh(Y,Z) - Fsim(X,Z) - Fsim(Y,Z) >= 2 - Fsim(X,Y)");
-        // Smaller tree distances -> higher similarity
-        //addRule("XdstToFsim", "1: Xsth(D1,D2) & Xdst(X,Y,D1) & Xdst(X,Z,D2) & Fhom(X,H) & Fhom(Y,H) & Fhom(Z,H) & Fsim(X,Z) -> Fsim(X,Y)");
-        // We need to further push up low-tree-distance similarities:
-        //addRule("XdstOneToFsim", "0.3: Xdst(X,Y,'1') & Fhom(X,H,C) & Fhom(Y,H,C) -> Fsim(X,Y)");
-
-        // Every pair of sister languages in which a homologue set is reconstructed or
-        // attested makes it more likely to have existed in the common parent language:
-        //addRule("FhomReconstruction", "1: Fhom(X,H) & Fhom(Y,H) & Xinh(X,Z) & Xinh(Y,Z) & (X != Y) -> Fhom(Z,H)");
-
-        // -------------------
-
-        System.out.println("Rules added:");
-        super.printRules(System.out);
+        registeredRuleSet = ruleSet;
+
+        if (added) {
+            System.out.println("Rules added:");
+            super.printRules(System.out);
+        }
     }
 
     // TODO this needs a general overhaul, on the full project level, based on
@@ -199,13 +184,110 @@ public class EtymologyProblem extends PslProblem {
         // high-belief E-atoms
         // - delete low-belief E-atoms
         Set<AtomTemplate> atomsToDelete = new HashSet<>();
-        atomsToDelete.add(new AtomTemplate("Xinh", ANY_CONST, ANY_CONST));
-        atomsToDelete.add(new AtomTemplate("Xloa", ANY_CONST, ANY_CONST));
-        atomsToDelete.add(new AtomTemplate("Fhom", ANY_CONST, ANY_CONST));
-        atomsToDelete.add(new AtomTemplate("Fsim", ANY_CONST, ANY_CONST));
+        for (String pred : CLEANED_UP_PREDICATES) {
+            atomsToDelete.add(new AtomTemplate(pred, ANY_CONST, ANY_CONST));
+        }
+        countAtomCleanUp(getName());
         return atomsToDelete;
     }
 
+    // The results of the last inference for the problem ID (null if there is none)
+    public static EtymologyResultStore getPreviousResults(String problemId) {
+        synchronized (previousResults) {
+            return previousResults.get(problemId);
+        }
+    }
+
+    // Problem ID -> number of clean-ups of its partitions (see declareAtomsForCleanUp)
+    // Incremental idea generation uses this to find out which atoms of its last run are still in the partitions.
+    public static synchronized int getAtomCleanUps(String problemId) {
+        return atomCleanUps.getOrDefault(problemId, 0);
+    }
+
+    private static synchronized void countAtomCleanUp(String problemId) {
+        atomCleanUps.merge(problemId, 1, Integer::sum);
+    }
+
+    private Set<String> getRegisteredRules() {
+        if (registeredRules == null) registeredRules = new HashSet<>();
+        return registeredRules;
+    }
+
+    private Set<String> getDroppedRules() {
+        if (droppedRules == null) droppedRules = new HashSet<>();
+        return droppedRules;
+    }
+
+    private Set<String> getRemovedAtoms() {
+        if (removedAtoms == null) removedAtoms = new HashSet<>();
+        return removedAtoms;
+    }
+
+    private Map<String, Double> getWarmStartValues() {
+        if (warmStartValues == null) warmStartValues = new HashMap<>();
+        return warmStartValues;
+    }
+
+    // Switches to anytime inference: the listener gets intermediate values of the in-memory solver every
+    // snapshotInterval iterations (see EtymologyProblemConfig) and can stop the optimization early. null to switch
+    // back.
+    public void setSnapshotListener(ConsensusAdmmSolver.SnapshotListener listener) {
+        snapshotListener = listener;
+    }
+
+    public AtomInventory getAtomInventory() {
+        if (inventory == null) inventory = new AtomInventory();
+        return inventory;
+    }
+
+    // Removes the rules (incl. their canonical variants) from this problem only; the config stays as it is.
+    // ruleNames: names as in RULES
+    public void dropRules(List<String> ruleNames) {
+        getDroppedRules().addAll(ruleNames);
+        // The rule set for the reduced config doesn't contain the rules any more, so they aren't grounded.
+    }
+
+    // The config with the dropped rules on its ignore list (the config itself if no rules were dropped)
+    public EtymologyProblemConfig getRuleConfig() {
+        EtymologyProblemConfig config = getEtymologyConfig();
+        if (getDroppedRules().isEmpty()) {
+            return config;
+        }
+        EtymologyProblemConfig ruleConfig = config.copy();
+        for (String rule : droppedRules) {
+            ruleConfig.addRuleToIgnoreList(rule);
+        }
+        return ruleConfig;
+    }
+
+    public static double ruleWeight(EtymologyProblemConfig config, String rule) {
+        return config.getRuleWeightOrDefault(rule, DEFAULT_RULE_WEIGHTS.getOrDefault(rule, 1.0));
+    }
+
+    // The weight with which a rule is grounded. If Fsim is stored canonically, EinhToFsim and FsimToFsim ground
+    // each unordered pair of forms once instead of once per argument order, so their weights are doubled to keep
+    // the balance with the other rules (and thus the results) the same as with symmetric Fsim atoms. (FsimToFsim
+    // grounds a self-pair Fsim(X,X) only in one of its canonical variants, so it isn't counted twice either.)
+    public static double groundedRuleWeight(EtymologyProblemConfig config, String rule) {
+        return ruleWeight(config, rule) * groundedWeightFactor(config.isCanonicalFsim(), rule);
+    }
+
+    public static double groundedWeightFactor(boolean canonicalFsim, String rule) {
+        return canonicalFsim && (rule.equals(EinhToFsimRule.NAME) || rule.equals(FsimToFsimRule.NAME)) ? 2.0 : 1.0;
+    }
+
+    // The groundings of the model for the atoms added so far, computed in memory (see EtymologyGrounder)
+    public List<LinearGroundRule> groundInMemory() {
+        checkCancelled("grounding");
+        EtymologyGrounder grounder = new EtymologyGrounder(getAtomInventory(), getRuleConfig());
+        List<LinearGroundRule> groundRules = grounder.ground();
+        // Groundings without open atoms (e.g. transitivity triples of attested forms) can't tell us anything about
+        // the inferred beliefs, so neither the reasoner nor the rule-atom graph gets them.
+        if (!grounder.getSkippedGroundings().isEmpty())
+            getLogger().displayln("Skipped trivial groundings: " + grounder.getSkippedGroundings());
+        return groundRules;
+    }
+
     public EtymologyProblemConfig getEtymologyConfig() {
         return (EtymologyProblemConfig) super.getConfig();
     }
@@ -232,18 +314,537 @@ public class EtymologyProblem extends PslProblem {
         hiddenAtoms.add(pred + "(" + String.join(", ", args) + ")");
     }
 
+    // Warm start: the solvers start from the given value instead of their default initialization. (Since they
+    // get their atoms from the atom inventory, the value isn't written to the database.)
+    public void addTargetWithInitialValue(String pred, double initialValue, String... args) {
+        addTargetAtom(pred, Double.NaN, args);
+        getWarmStartValues().put(AtomInventory.print(pred, args), initialValue);
+    }
+
+    // An atom that an earlier problem for the same query (problem ID) has written into the partitions already:
+    // it is only registered with this problem (incremental idea generation).
+    // value: NaN for targets; initialValue: NaN for the default initialization
+    public void addExistingAtom(String pred, double value, double initialValue, String... args) {
+        if (Double.isNaN(value)) {
+            getAtomInventory().addTarget(pred, args);
+            if (!Double.isNaN(initialValue)) {
+                getWarmStartValues().put(AtomInventory.print(pred, args), initialValue);
+            }
+        } else {
+            getAtomInventory().addObservation(pred, value, args);
+        }
+    }
+
+    // Adds an observation to the problem and to the atom inventory.
+    public void addObservedAtom(String pred, double value, String... args) {
+        if (!getRemovedAtoms().remove(AtomInventory.print(pred, args))) {
+            super.addObservation(pred, value, args);
+        }
+        getAtomInventory().addObservation(pred, value, args);
+    }
+
+    // Adds a target to the problem and to the atom inventory.
+    // initialValue: NaN for the default initialization
+    public void addTargetAtom(String pred, double initialValue, String... args) {
+        if (Double.isNaN(initialValue)) {
+            if (!getRemovedAtoms().remove(AtomInventory.print(pred, args))) {
+                super.addTarget(pred, args);
+            }
+            getAtomInventory().addTarget(pred, args);
+        } else {
+            addTargetWithInitialValue(pred, initialValue, args);
+        }
+    }
+
+    // For incremental reruns of the idea generator: removes atoms that are no longer part of the problem.
+    // The solvers only see the atoms of the atom inventory (see EtymologyGrounder), so the atoms are only removed
+    // from there. They stay in the database partitions, so they aren't written again if they are added back
+    // (e.g. with a new value).
+    public void removeAtoms(String pred, List<String[]> argTuples) {
+        for (String[] args : argTuples) {
+            getAtomInventory().remove(pred, args);
+            String atom = pred + "(" + String.join(", ", args) + ")";
+            getRemovedAtoms().add(atom);
+            getWarmStartValues().remove(atom);
+            fixedAtoms.remove(atom);
+            hiddenAtoms.remove(atom);
+        }
+    }
+
+    // Checks the estimated size of the grounding against the budget. Returns true if the caller has to
+    // release an oversized-problem slot after the inference.
+    private boolean admit() throws GroundingBudgetExceededException, InterruptedException {
+        EtymologyProblemConfig config = getRuleConfig();
+        long budget = config.getGroundingBudget();
+        if (budget <= 0) {
+            return false;
+        }
+        Map<String, Long> estimates = GroundingPlanner.estimate(getAtomInventory(), config.isCanonicalFsim());
+        long total = GroundingPlanner.total(estimates, config);
+        if (verbose) System.err.println("Estimated ground rules per rule: " + estimates);
+        getLogger().displayln("Estimated number of ground rules: " + total + " (budget: " + budget + ")");
+        if (total <= budget) {
+            return false;
+        }
+
+        GroundingPlanner.Policy policy;
+        try {
+            policy = GroundingPlanner.Policy.valueOf(config.getGroundingBudgetPolicy().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown grounding budget policy: " + config.getGroundingBudgetPolicy()
+                    + " (rejecting the problem)");
+            policy = GroundingPlanner.Policy.REJECT;
+        }
+        switch (policy) {
+            case DOWNGRADE:
+                List<String> rulesToDrop = GroundingPlanner.rulesToDrop(estimates, config, budget);
+                if (rulesToDrop == null) {
+                    throw new GroundingBudgetExceededException(total, budget);
+                }
+                dropRules(rulesToDrop);
+                getLogger().displayln("Exceeding the grounding budget, dropping the following rules: " + rulesToDrop
+                        + " (estimated number of ground rules now: " + GroundingPlanner.total(estimates,
+                        getRuleConfig()) + ")");
+                return false;
+            case QUEUE:
+                getLogger().displayln("Exceeding the grounding budget, waiting for other large problems to finish.");
+                GroundingPlanner.waitForOversizedSlot();
+                return true;
+            default:
+                throw new GroundingBudgetExceededException(total, budget);
+        }
+    }
+
+    // Interrupting the thread cancels the inference at the next phase boundary (grounding, optimization,
+    // rule-atom graph) or while waiting. call() then throws a CancellationException.
     @Override
     public InferenceResult call() throws Exception {
+        try {
+            checkCancelled("admission");
+            boolean oversized = admit();
+            try {
+                return infer();
+            } finally {
+                if (oversized) GroundingPlanner.releaseOversizedSlot();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw cancelled(e);
+        } catch (CancellationException e) {
+            throw cancelled(e);
+        }
+    }
+
+    private static void checkCancelled(String phase) {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Interrupted before " + phase + ".");
+        }
+    }
+
+    private CancellationException cancelled(Exception cause) {
+        getLogger().displayln("Inference for " + getName() + " was cancelled (" + cause.getMessage() + ").");
+        CancellationException e = new CancellationException("Inference for " + getName() + " was cancelled.");
+        e.initCause(cause);
+        return e;
+    }
+
+    private InferenceResult infer() throws Exception {
+        Solution solution = null;
+        if (getEtymologyConfig().getInferenceTimeLimit() > 0 || snapshotListener != null) {
+            solution = solveAnytime();
+        } else if (isSmall()) {
+            solution = solveInMemory();
+        }
+        if (solution == null) {
+            solution = solveDecomposed();
+        }
+        if (solution == null) {
+            solution = solve();
+        }
+        return toResult(solution);
+    }
+
+    // null if the config doesn't ask for a decomposition or the problem can't be decomposed that way
+    private Solution solveDecomposed() throws Exception {
+        if (getEtymologyConfig().isPartitionHomologueSets()) {
+            return solveByHomologueSet();
+        } else if (getEtymologyConfig().isHierarchicalInference()) {
+            return solveHierarchically();
+        } else if (getEtymologyConfig().isDecomposeComponents()) {
+            return solveComponents();
+        }
+        return null;
+    }
+
+    // Re-solves the problem with new rule weights (rule name as in RULES -> weight) without grounding it again:
+    // the weights of the ground rules of the last inference are updated and the in-memory solver starts from its
+    // values. Before the in-memory solver is used, it has to reproduce the values of the last inference (by PSL's
+    // reasoner, on the same ground rules) with the old weights. Otherwise, and if there is no earlier inference for
+    // the current atoms, this is a regular inference with the new weights.
+    // The rule-atom graph is built from the same ground rules, with the new weights and the re-solved values.
+    public InferenceResult resolveWithWeights(Map<String, Double> ruleWeights) throws Exception {
+        EtymologyProblemConfig config = getEtymologyConfig();
+        Map<String, Double> oldWeights = groundedRuleWeights(config);
+        for (Map.Entry<String, Double> ruleWeight : ruleWeights.entrySet()) {
+            config.addRuleWeight(ruleWeight.getKey(), ruleWeight.getValue());
+        }
+        if (lastSolution == null || lastSolutionModCount != getAtomInventory().getModificationCount()) {
+            reweightSolver = null;
+            return call();
+        }
+
+        long startTime = System.currentTimeMillis();
+        if (reweightSolver == null) {
+            ConsensusAdmmSolver solver = new ConsensusAdmmSolver(lastSolution.groundRules);
+            solver.setWeights(oldWeights);
+            double deviation = maxDeviation(solver.solve(), lastSolution.values);
+            if (deviation > CONSISTENCY_TOLERANCE) {
+                getLogger().displayln("The in-memory model doesn't reproduce the last inference (deviation: "
+                        + deviation + "), solving the problem again.");
+                return call();
+            }
+            reweightSolver = solver;
+        }
+        reweightSolver.setWeights(groundedRuleWeights(config));
+        reweightSolver.setInitialValues(lastSolution.values);
+        Map<String, Double> values = new HashMap<>(lastSolution.values);
+        values.putAll(reweightSolver.solve());
+        checkCancelled("extracting the results");
+        getLogger().displayln("Re-solving with new rule weights took " + (System.currentTimeMillis() - startTime)
+                + " ms (" + reweightSolver.getIterations() + " iterations).");
+
+        return toResult(new Solution(lastSolution.groundRules, values));
+    }
+
+    private static Map<String, Double> groundedRuleWeights(EtymologyProblemConfig config) {
+        Map<String, Double> weights = new HashMap<>();
+        for (String rule : RULES) {
+            weights.put(rule, groundedRuleWeight(config, rule));
+        }
+        return weights;
+    }
+
+    // The largest difference between the values of the same atoms (missing atoms count as 0)
+    private static double maxDeviation(Map<String, Double> values, Map<String, Double> reference) {
+        double deviation = 0.0;
+        for (Map.Entry<String, Double> value : values.entrySet()) {
+            deviation = Math.max(deviation, Math.abs(value.getValue() - reference.getOrDefault(value.getKey(), 0.0)));
+        }
+        return deviation;
+    }
+
+    // Also keeps the solution (with the values moved to an EtymologyResultStore) as the last solution.
+    private InferenceResult toResult(Solution solution) {
+        checkCancelled("building the rule-atom graph");
+        // The rule-atom graph explains the ground rules with the registered (talking) rules.
         addInteractionRules();
-        List<List<GroundRule>> groundRules = runInference(true);
-        RuleAtomGraph.GROUNDING_OUTPUT = true;
-        RuleAtomGraph.ATOM_VALUE_OUTPUT = true;
-        Map<String, Double> valueMap = extractResultsForAllPredicates(false);
+        EtymologyResultStore results = new EtymologyResultStore(getAtomInventory(), solution.values);
+        lastSolution = new Solution(solution.groundRules, results.asMap());
+        if (lastSolutionModCount != getAtomInventory().getModificationCount()) {
+            lastSolutionModCount = getAtomInventory().getModificationCount();
+            reweightSolver = null;
+        }
+        synchronized (previousResults) {
+            previousResults.put(getName(), results);
+        }
+        // The PSL ground rules for the current rule weights, with the atoms set to the solution
+        List<List<GroundRule>> groundRules = new PslGrounding(solution.groundRules, getAtomInventory(),
+                EtymologyRuleSet.forConfig(getRuleConfig()), results.asMap()).getGroundRules();
         if (verbose) System.err.println("FIXED: " + fixedAtoms);
         if (verbose) System.err.println("HIDDEN: " + hiddenAtoms);
-        RuleAtomGraph rag = new RuleAtomGraph(this, new EtymologyRagFilter(valueMap, fixedAtoms, hiddenAtoms),
-                groundRules);
-        return new InferenceResult(rag, valueMap, getEtymologyConfig().copy());
+        RuleAtomGraph rag;
+        synchronized (RuleAtomGraph.class) {
+            rag = new RuleAtomGraph(this, new EtymologyRagFilter(results, fixedAtoms, hiddenAtoms), groundRules);
+        }
+        return new InferenceResult(rag, results.asMap(), getRuleConfig().copy());
+    }
+
+    // The ground rules and atom values after the optimization
+    static class Solution {
+        final List<LinearGroundRule> groundRules;
+        final Map<String, Double> values;
+
+        Solution(List<LinearGroundRule> groundRules, Map<String, Double> values) {
+            this.groundRules = groundRules;
+            this.values = values;
+        }
+    }
+
+    // PSL's reasoner on the in-memory grounding (see PslGrounding): PSL's own grounding isn't run.
+    Solution solve() throws Exception {
+        int nWarmStartAtoms = getWarmStartValues().size();
+        long startTime = System.currentTimeMillis();
+        List<LinearGroundRule> groundRules = groundInMemory();
+        checkCancelled("optimization");
+        // (PSL's reasoner doesn't check for interruptions itself.)
+        PslGrounding grounding = new PslGrounding(groundRules, getAtomInventory(),
+                EtymologyRuleSet.forConfig(getRuleConfig()), getWarmStartValues());
+        Map<String, Double> values = grounding.optimize();
+        checkCancelled("extracting the results");
+        getLogger().displayln("Inference took " + (System.currentTimeMillis() - startTime) + " ms (" +
+                (nWarmStartAtoms > 0 ? "warm start for " + nWarmStartAtoms + " target atoms" : "cold start") + ").");
+        return new Solution(groundRules, withAllAtoms(values));
+    }
+
+    // PSL's reasoner doesn't report its iterations, so the effect of the warm start values is measured with the
+    // in-memory solver: the number of iterations with and without them. (Solves the problem twice, so it isn't done
+    // as part of the inference.)
+    // Returns {iterations with warm start, iterations with cold start}.
+    public int[] compareWarmStart() {
+        List<LinearGroundRule> groundRules = groundInMemory();
+        ConsensusAdmmSolver warm = new ConsensusAdmmSolver(groundRules);
+        warm.setInitialValues(getWarmStartValues());
+        warm.solve();
+        ConsensusAdmmSolver cold = new ConsensusAdmmSolver(groundRules);
+        cold.solve();
+        getLogger().displayln("Warm start for " + getWarmStartValues().size() + " target atoms: " +
+                warm.getIterations() + " iterations (" + cold.getIterations() + " with a cold start, "
+                + "in-memory solver).");
+        return new int[]{warm.getIterations(), cold.getIterations()};
+    }
+
+    // Small problems (see fastPathMaxAtoms) are solved in memory, since the costs of setting up PSL's reasoner
+    // would dominate.
+    private boolean isSmall() {
+        int maxAtoms = getEtymologyConfig().getFastPathMaxAtoms();
+        if (maxAtoms <= 0) {
+            return false;
+        }
+        int nOpen = 0;
+        for (String pred : getAtomInventory().getPredicates()) {
+            for (AtomInventory.Entry entry : getAtomInventory().getAtoms(pred)) {
+                if (!entry.isObserved() && ++nOpen > maxAtoms) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Anytime inference: PSL's reasoner can neither be observed nor stopped while it runs, so the problem is solved
+    // with the in-memory solver. The snapshots are intermediate values of that solver, on the same ground rules that
+    // PSL's reasoner would get. It stops at the time limit, when the listener says so or when it has converged; in
+    // the first two cases, its values are a provisional result. Converged values are the result, PSL isn't run.
+    // Only if the solver runs out of iterations, PSL computes the result (without a time limit; returns null).
+    private Solution solveAnytime() {
+        EtymologyProblemConfig config = getEtymologyConfig();
+        long startTime = System.currentTimeMillis();
+        List<LinearGroundRule> groundRules = groundInMemory();
+        ConsensusAdmmSolver solver = inMemorySolver(groundRules);
+        if (config.getInferenceTimeLimit() > 0) {
+            // The grounding counts towards the time limit.
+            long elapsed = System.currentTimeMillis() - startTime;
+            solver.setTimeLimit(Math.max(1, config.getInferenceTimeLimit() - elapsed));
+        }
+        if (snapshotListener != null) {
+            solver.setSnapshotListener(snapshotListener, config.getSnapshotInterval());
+        }
+        Map<String, Double> values = solver.solve();
+        checkCancelled("extracting the results");
+        ConsensusAdmmSolver.Termination termination = solver.getTermination();
+        getLogger().displayln("In-memory inference took " + (System.currentTimeMillis() - startTime) + " ms ("
+                + solver.getIterations() + " iterations, " + termination.name().toLowerCase() + ").");
+        if (termination == ConsensusAdmmSolver.Termination.MAX_ITERATIONS) {
+            getLogger().displayln("Computing the result with PSL.");
+            return null;
+        }
+        if (termination != ConsensusAdmmSolver.Termination.CONVERGED) {
+            getLogger().displayln("Returning the provisional values of the in-memory inference.");
+        }
+        return new Solution(groundRules, withAllAtoms(values));
+    }
+
+    // Inference on the in-memory grounding for small problems (see isSmall).
+    Solution solveInMemory() {
+        long startTime = System.currentTimeMillis();
+        List<LinearGroundRule> groundRules = groundInMemory();
+        ConsensusAdmmSolver solver = inMemorySolver(groundRules);
+        Map<String, Double> values = solver.solve();
+        checkCancelled("extracting the results");
+        getLogger().displayln("In-memory inference took " + (System.currentTimeMillis() - startTime) + " ms ("
+                + solver.getIterations() + " iterations, " + solver.getTermination().name().toLowerCase() + ").");
+        return new Solution(groundRules, withAllAtoms(values));
+    }
+
+    // A solver for the in-memory grounding, starting from the warm start values and the last results
+    private ConsensusAdmmSolver inMemorySolver(List<LinearGroundRule> groundRules) {
+        ConsensusAdmmSolver solver = new ConsensusAdmmSolver(groundRules);
+        Map<String, Double> initialValues = new HashMap<>(getWarmStartValues());
+        if (lastSolution != null) initialValues.putAll(lastSolution.values);
+        solver.setInitialValues(initialValues);
+        return solver;
+    }
+
+    // The solvers only return the values of the open atoms in their groundings. The other open atoms are 0, as in PSL.
+    private Map<String, Double> withAllAtoms(Map<String, Double> solverValues) {
+        return withAllAtoms(getAtomInventory(), solverValues);
+    }
+
+    private static Map<String, Double> withAllAtoms(AtomInventory atoms, Map<String, Double> solverValues) {
+        Map<String, Double> values = new HashMap<>(solverValues);
+        for (String pred : atoms.getPredicates()) {
+            for (AtomInventory.Entry entry : atoms.getAtoms(pred)) {
+                String atom = AtomInventory.print(pred, entry.args);
+                if (entry.isObserved()) {
+                    values.put(atom, entry.value);
+                } else {
+                    values.putIfAbsent(atom, 0.0);
+                }
+            }
+        }
+        return values;
+    }
+
+    // Solves the independent parts of the problem (see ComponentDecomposition) as separate problems in parallel.
+    // Returns null if the problem doesn't fall apart.
+    private Solution solveComponents() throws Exception {
+        List<ComponentDecomposition.Component> components = ComponentDecomposition.decompose(groundInMemory());
+        if (components.size() <= 1) {
+            return null;
+        }
+        getLogger().displayln("Solving " + components.size() + " independent components.");
+        List<Callable<Solution>> subProblems = new ArrayList<>();
+        for (int i = 0; i < components.size(); i++) {
+            ComponentDecomposition.Component component = components.get(i);
+            AtomInventory componentAtoms = new AtomInventory();
+            for (String atom : component.openAtoms) {
+                componentAtoms.addTarget(AtomInventory.predicate(atom), getAtomInventory().get(atom).args);
+            }
+            for (String atom : component.observedAtoms) {
+                AtomInventory.Entry entry = getAtomInventory().get(atom);
+                componentAtoms.addObservation(AtomInventory.predicate(atom), entry.value, entry.args);
+            }
+            subProblems.add(() -> solveSubProblem(componentAtoms, Collections.emptyMap()));
+        }
+
+        List<LinearGroundRule> groundRules = new ArrayList<>();
+        Map<String, Double> values = new HashMap<>();
+        for (Solution solution : solveInParallel(subProblems)) {
+            groundRules.addAll(solution.groundRules);
+            values.putAll(solution.values);
+        }
+        // Atoms that aren't part of any (non-trivial) ground rule
+        for (String pred : getAtomInventory().getPredicates()) {
+            for (AtomInventory.Entry entry : getAtomInventory().getAtoms(pred)) {
+                values.putIfAbsent(AtomInventory.print(pred, entry.args), entry.isObserved() ? entry.value : 0.0);
+            }
+        }
+        return new Solution(groundRules, values);
+    }
+
+    // Solves one problem per group of homologue sets in parallel and recombines the results
+    // (see HomologueSetPartition). Returns null if the homologue sets can't be split into several groups.
+    private Solution solveByHomologueSet() throws Exception {
+        HomologueSetPartition partition = new HomologueSetPartition(getAtomInventory());
+        int nParts = partition.getNumberOfParts();
+        if (nParts <= 1) {
+            if (partition.getPegs().size() > 1) {
+                getLogger().displayln("The homologue sets are connected, solving them as one problem.");
+            }
+            return null;
+        }
+        getLogger().displayln("Solving one problem per group of homologue sets (" + partition.getPegs().size()
+                + " sets in " + nParts + " groups).");
+        List<Callable<Solution>> subProblems = new ArrayList<>();
+        for (int i = 0; i < nParts; i++) {
+            int part = i;
+            subProblems.add(() -> solveSubProblem(partition.forPart(part), Collections.emptyMap()));
+        }
+        List<Solution> solutions = solveInParallel(subProblems);
+
+        List<Map<String, Double>> values = new ArrayList<>();
+        List<LinearGroundRule> groundRules = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (Solution solution : solutions) {
+            values.add(solution.values);
+            addDistinctGroundRules(groundRules, HomologueSetPartition.withoutRemainder(solution.groundRules), seen);
+        }
+        return new Solution(groundRules, partition.recombine(values));
+    }
+
+    // Solves the family branches separately (in parallel), then the atoms that connect them
+    // (see PhylogenyHierarchy). Returns null if all forms belong to the same branch.
+    private Solution solveHierarchically() throws Exception {
+        PhylogenyHierarchy hierarchy = new PhylogenyHierarchy(getAtomInventory());
+        int nBranches = hierarchy.getNumberOfBranches();
+        if (nBranches <= 1) {
+            return null;
+        }
+        getLogger().displayln("Solving " + nBranches + " family branches separately.");
+        List<Callable<Solution>> branchProblems = new ArrayList<>();
+        for (int i = 0; i < nBranches; i++) {
+            int branch = i;
+            branchProblems.add(() -> solveSubProblem(hierarchy.branch(branch), Collections.emptyMap()));
+        }
+        List<Solution> branchSolutions = solveInParallel(branchProblems);
+        Map<String, Double> values = new HashMap<>();
+        for (Solution solution : branchSolutions) {
+            values.putAll(solution.values);
+        }
+
+        List<LinearGroundRule> groundRules = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        Map<String, Double> initialValues = new HashMap<>();
+        AtomInventory topAtoms = hierarchy.topLevel(values, initialValues);
+        if (topAtoms != null) {
+            getLogger().displayln("Solving the contacts between the branches.");
+            Solution topSolution = solveSubProblem(topAtoms, initialValues);
+            values.putAll(topSolution.values);
+            addDistinctGroundRules(groundRules, topSolution.groundRules, seen);
+        }
+        for (Solution solution : branchSolutions) {
+            addDistinctGroundRules(groundRules, solution.groundRules, seen);
+        }
+        return new Solution(groundRules, values);
+    }
+
+    // Ground rules that several sub-problems have in common should only show up once in the rule-atom graph.
+    // (The same grounding can differ in its constant, e.g. if one sub-problem observes atoms that another one
+    // infers, so the groundings are compared by rule and atoms.)
+    private static void addDistinctGroundRules(List<LinearGroundRule> merged, List<LinearGroundRule> groundRules,
+                                               Set<String> seen) {
+        for (LinearGroundRule groundRule : groundRules) {
+            if (seen.add(groundRule.pslRule + " " + String.join(" ", groundRule.terms))) {
+                merged.add(groundRule);
+            }
+        }
+    }
+
+    // The sub-problems only share the rule set and PSL's configuration (which no EtymologyProblem changes).
+    private List<Solution> solveInParallel(List<Callable<Solution>> subProblems) throws Exception {
+        EtymologyProblemConfig config = getEtymologyConfig();
+        int nThreads = config.getComponentThreads() > 0 ? config.getComponentThreads() :
+                Runtime.getRuntime().availableProcessors();
+        List<Solution> solutions = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(nThreads, subProblems.size()));
+        List<Future<Solution>> futures = new ArrayList<>();
+        try {
+            for (Callable<Solution> subProblem : subProblems) {
+                futures.add(executor.submit(subProblem));
+            }
+            for (Future<Solution> future : futures) {
+                solutions.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            executor.shutdownNow();
+        }
+        return solutions;
+    }
+
+    // Solves the problem over the given atoms with the rules of this problem, like solve() but without writing the
+    // atoms anywhere: they are grounded in memory and passed to PSL's reasoner.
+    // initialValues: starting points for (some of) the open atoms
+    private Solution solveSubProblem(AtomInventory atoms, Map<String, Double> initialValues) {
+        checkCancelled("grounding");
+        EtymologyProblemConfig config = getRuleConfig();
+        List<LinearGroundRule> groundRules = new EtymologyGrounder(atoms, config).ground();
+        checkCancelled("optimization");
+        Map<String, Double> values = new PslGrounding(groundRules, atoms, EtymologyRuleSet.forConfig(config),
+                initialValues).optimize();
+        checkCancelled("extracting the results");
+        return new Solution(groundRules, withAllAtoms(atoms, values));
     }
 
 }
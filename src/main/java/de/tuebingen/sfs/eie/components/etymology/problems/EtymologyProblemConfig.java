@@ -48,6 +48,13 @@ public class EtymologyProblemConfig extends PslProblemConfig {
 	private static final double DEFAULT_THRESHOLD = 0.05;
 	private static final String DEFAULT_LOGFILE_PATH = "src/test/resources/etym-inf-log.txt";
 	private static final int DEFAULT_MAX_SEM_EDGE_DIST = 2;
+	// 0 = use all available processors
+	private static final int DEFAULT_SIMILARITY_THREADS = 0;
+	// 0 = no caching
+	private static final int DEFAULT_SIMILARITY_CACHE_SIZE = 100000;
+	private static final int DEFAULT_LANGUAGE_CLOSURE_CACHE_SIZE = 256;
+	private static final String DEFAULT_GROUNDING_BUDGET_POLICY = "reject";
+	private static final int DEFAULT_SNAPSHOT_INTERVAL = 100;
 
 	private List<Integer> formIds = null;
 
@@ -59,6 +66,56 @@ public class EtymologyProblemConfig extends PslProblemConfig {
 
 	private double persistenceThreshold;
 
+	// Number of threads used for computing the phonetic similarities between forms.
+	private int similarityThreads;
+	// Maximum number of form pairs whose similarities are kept in memory across inference runs.
+	private int similarityCacheSize;
+	// If set, the similarity cache is read from/written to this file.
+	private String similarityCacheFile;
+	// Identifies the correspondence model the cached similarities were computed with.
+	// Without it, cached similarities are only reused within the same session.
+	private String corrModelVersion;
+	// If set, similarities are looked up in this precomputed matrix (see SimilarityMatrixFile) before aligning.
+	private String similarityMatrixFile;
+	// Fsim candidate selection: only keep the fsimTopK most similar pairs per form (0 = no limit)
+	// and only pairs with a similarity of at least fsimMinSimilarity.
+	// Pairs required by the tree structure are always kept.
+	// The pairs the rules need are added back (see EtymologyIdeaGenerator.closeUnderRuleHeads), so this only
+	// prunes pairs between unrelated language families.
+	private int fsimTopK;
+	private double fsimMinSimilarity;
+	// Store Fsim only once per unordered pair of forms (as Fsim(X,Y) with X < Y) instead of in both directions.
+	private boolean canonicalFsim;
+	// Number of input language sets whose closure (the missing ancestor and contact languages) is remembered
+	// across runs on the same phylogeny (0 = no caching).
+	private int languageClosureCacheSize;
+	// Reruns on the same problem only add/remove the atoms that changed since the previous run
+	// (e.g. after adding or removing a few forms).
+	private boolean incrementalIdeaGeneration;
+	// Start the solver from the belief values of earlier inferences (if the idea generator has a belief store).
+	private boolean warmStart;
+	// Maximum estimated number of ground rules for a single inference (0: no limit)
+	private long groundingBudget;
+	// What to do with problems that exceed the grounding budget: reject, downgrade (drop optional rules)
+	// or queue (run only one such problem at a time)
+	private String groundingBudgetPolicy;
+	// Split the grounded problem into independent components and solve them in parallel
+	private boolean decomposeComponents;
+	// 0 = number of available processors
+	private int componentThreads;
+	// Solve one problem per group of homologue sets (in parallel, see HomologueSetPartition)
+	private boolean partitionHomologueSets;
+	// Solve the family branches separately and then the contacts between them (see PhylogenyHierarchy)
+	private boolean hierarchicalInference;
+	// Anytime inference: stop the in-memory optimization after this many milliseconds and return the best values
+	// so far (0 = no limit). If it converges earlier, its values are the result (see EtymologyProblem.solveAnytime).
+	private long inferenceTimeLimit;
+	// Anytime inference: number of optimizer iterations between intermediate snapshots
+	private int snapshotInterval;
+	// Problems with at most this many open atoms are solved in memory, without PSL (0 = never).
+	// Their rule-atom graphs only have ground rules if PSL solved the same atoms before.
+	private int fastPathMaxAtoms;
+
 	private InferenceLogger logger;
 
 	public EtymologyProblemConfig() {
@@ -147,6 +204,26 @@ public class EtymologyProblemConfig extends PslProblemConfig {
 		// copy.logger = logger;
 		copy.setLogfile(super.getLogfilePath());
 		copy.persistenceThreshold = persistenceThreshold;
+		copy.similarityThreads = similarityThreads;
+		copy.similarityCacheSize = similarityCacheSize;
+		copy.similarityCacheFile = similarityCacheFile;
+		copy.corrModelVersion = corrModelVersion;
+		copy.similarityMatrixFile = similarityMatrixFile;
+		copy.fsimTopK = fsimTopK;
+		copy.fsimMinSimilarity = fsimMinSimilarity;
+		copy.canonicalFsim = canonicalFsim;
+		copy.languageClosureCacheSize = languageClosureCacheSize;
+		copy.incrementalIdeaGeneration = incrementalIdeaGeneration;
+		copy.warmStart = warmStart;
+		copy.groundingBudget = groundingBudget;
+		copy.groundingBudgetPolicy = groundingBudgetPolicy;
+		copy.decomposeComponents = decomposeComponents;
+		copy.componentThreads = componentThreads;
+		copy.partitionHomologueSets = partitionHomologueSets;
+		copy.hierarchicalInference = hierarchicalInference;
+		copy.inferenceTimeLimit = inferenceTimeLimit;
+		copy.snapshotInterval = snapshotInterval;
+		copy.fastPathMaxAtoms = fastPathMaxAtoms;
 
 		return copy;
 	}
@@ -168,6 +245,26 @@ public class EtymologyProblemConfig extends PslProblemConfig {
 		logger = new InferenceLogger();
 		setLogfile(DEFAULT_LOGFILE_PATH);
 		persistenceThreshold = DEFAULT_THRESHOLD;
+		similarityThreads = DEFAULT_SIMILARITY_THREADS;
+		similarityCacheSize = DEFAULT_SIMILARITY_CACHE_SIZE;
+		similarityCacheFile = null;
+		corrModelVersion = null;
+		similarityMatrixFile = null;
+		fsimTopK = 0;
+		fsimMinSimilarity = 0.0;
+		canonicalFsim = false;
+		languageClosureCacheSize = DEFAULT_LANGUAGE_CLOSURE_CACHE_SIZE;
+		incrementalIdeaGeneration = false;
+		warmStart = false;
+		groundingBudget = 0;
+		groundingBudgetPolicy = DEFAULT_GROUNDING_BUDGET_POLICY;
+		decomposeComponents = false;
+		componentThreads = 0;
+		partitionHomologueSets = false;
+		hierarchicalInference = false;
+		inferenceTimeLimit = 0;
+		snapshotInterval = DEFAULT_SNAPSHOT_INTERVAL;
+		fastPathMaxAtoms = 0;
 	}
 
 	public List<Integer> getFormIds() {
@@ -228,6 +325,170 @@ public class EtymologyProblemConfig extends PslProblemConfig {
 			this.maxSemEdgeDist = maxSemEdgeDist;
 	}
 
+	public int getSimilarityThreads() {
+		return similarityThreads;
+	}
+
+	public void setSimilarityThreads(int similarityThreads) {
+		if (similarityThreads >= 0)
+			this.similarityThreads = similarityThreads;
+	}
+
+	public int getSimilarityCacheSize() {
+		return similarityCacheSize;
+	}
+
+	public void setSimilarityCacheSize(int similarityCacheSize) {
+		if (similarityCacheSize >= 0)
+			this.similarityCacheSize = similarityCacheSize;
+	}
+
+	public String getSimilarityCacheFile() {
+		return similarityCacheFile;
+	}
+
+	public void setSimilarityCacheFile(String similarityCacheFile) {
+		this.similarityCacheFile = similarityCacheFile;
+	}
+
+	public String getCorrModelVersion() {
+		return corrModelVersion;
+	}
+
+	public void setCorrModelVersion(String corrModelVersion) {
+		this.corrModelVersion = corrModelVersion;
+	}
+
+	public String getSimilarityMatrixFile() {
+		return similarityMatrixFile;
+	}
+
+	public void setSimilarityMatrixFile(String similarityMatrixFile) {
+		this.similarityMatrixFile = similarityMatrixFile;
+	}
+
+	public int getFsimTopK() {
+		return fsimTopK;
+	}
+
+	public void setFsimTopK(int fsimTopK) {
+		if (fsimTopK >= 0)
+			this.fsimTopK = fsimTopK;
+	}
+
+	public double getFsimMinSimilarity() {
+		return fsimMinSimilarity;
+	}
+
+	public void setFsimMinSimilarity(double fsimMinSimilarity) {
+		this.fsimMinSimilarity = fsimMinSimilarity;
+	}
+
+	public boolean isCanonicalFsim() {
+		return canonicalFsim;
+	}
+
+	public void setCanonicalFsim(boolean canonicalFsim) {
+		this.canonicalFsim = canonicalFsim;
+	}
+
+	public int getLanguageClosureCacheSize() {
+		return languageClosureCacheSize;
+	}
+
+	public void setLanguageClosureCacheSize(int languageClosureCacheSize) {
+		if (languageClosureCacheSize >= 0)
+			this.languageClosureCacheSize = languageClosureCacheSize;
+	}
+
+	public boolean isIncrementalIdeaGeneration() {
+		return incrementalIdeaGeneration;
+	}
+
+	public void setIncrementalIdeaGeneration(boolean incrementalIdeaGeneration) {
+		this.incrementalIdeaGeneration = incrementalIdeaGeneration;
+	}
+
+	public boolean isWarmStart() {
+		return warmStart;
+	}
+
+	public void setWarmStart(boolean warmStart) {
+		this.warmStart = warmStart;
+	}
+
+	public long getGroundingBudget() {
+		return groundingBudget;
+	}
+
+	public void setGroundingBudget(long groundingBudget) {
+		this.groundingBudget = groundingBudget;
+	}
+
+	public String getGroundingBudgetPolicy() {
+		return groundingBudgetPolicy;
+	}
+
+	public void setGroundingBudgetPolicy(String groundingBudgetPolicy) {
+		this.groundingBudgetPolicy = groundingBudgetPolicy.toLowerCase();
+	}
+
+	public boolean isDecomposeComponents() {
+		return decomposeComponents;
+	}
+
+	public void setDecomposeComponents(boolean decomposeComponents) {
+		this.decomposeComponents = decomposeComponents;
+	}
+
+	public int getComponentThreads() {
+		return componentThreads;
+	}
+
+	public void setComponentThreads(int componentThreads) {
+		this.componentThreads = componentThreads;
+	}
+
+	public boolean isPartitionHomologueSets() {
+		return partitionHomologueSets;
+	}
+
+	public void setPartitionHomologueSets(boolean partitionHomologueSets) {
+		this.partitionHomologueSets = partitionHomologueSets;
+	}
+
+	public boolean isHierarchicalInference() {
+		return hierarchicalInference;
+	}
+
+	public void setHierarchicalInference(boolean hierarchicalInference) {
+		this.hierarchicalInference = hierarchicalInference;
+	}
+
+	public long getInferenceTimeLimit() {
+		return inferenceTimeLimit;
+	}
+
+	public void setInferenceTimeLimit(long inferenceTimeLimit) {
+		this.inferenceTimeLimit = inferenceTimeLimit;
+	}
+
+	public int getSnapshotInterval() {
+		return snapshotInterval;
+	}
+
+	public void setSnapshotInterval(int snapshotInterval) {
+		this.snapshotInterval = snapshotInterval;
+	}
+
+	public int getFastPathMaxAtoms() {
+		return fastPathMaxAtoms;
+	}
+
+	public void setFastPathMaxAtoms(int fastPathMaxAtoms) {
+		this.fastPathMaxAtoms = fastPathMaxAtoms;
+	}
+
 	public void setNonPersistableFeatures(String problemId, DatabaseManager dbManager) {
 		setName(problemId);
 		setDbManager(dbManager);
@@ -241,6 +502,35 @@ public class EtymologyProblemConfig extends PslProblemConfig {
 		out.println("Etymology config");
 		out.println("- Forms: " + formIds);
 		out.println("- Maximum concept distance: " + maxSemEdgeDist);
+		out.println("- Similarity threads: " + (similarityThreads == 0 ? "all" : similarityThreads));
+		out.println("- Similarity cache size: " + similarityCacheSize
+				+ (similarityCacheFile == null ? "" : " (file: " + similarityCacheFile + ")"));
+		if (similarityMatrixFile != null)
+			out.println("- Similarity matrix: " + similarityMatrixFile);
+		if (fsimTopK > 0 || fsimMinSimilarity > 0.0)
+			out.println("- Fsim candidates: top " + (fsimTopK > 0 ? fsimTopK : "all")
+					+ " per form, minimum similarity " + fsimMinSimilarity);
+		if (canonicalFsim)
+			out.println("- Fsim stored once per unordered pair");
+		out.println("- Language closure cache size: " + languageClosureCacheSize);
+		if (incrementalIdeaGeneration)
+			out.println("- Incremental idea generation");
+		if (warmStart)
+			out.println("- Warm start from earlier beliefs");
+		if (groundingBudget > 0)
+			out.println("- Grounding budget: " + groundingBudget + " ground rules (if exceeded: "
+					+ groundingBudgetPolicy + ")");
+		if (decomposeComponents)
+			out.println("- Independent components solved in parallel (threads: "
+					+ (componentThreads == 0 ? "all" : componentThreads) + ")");
+		if (partitionHomologueSets)
+			out.println("- One problem per homologue set");
+		if (hierarchicalInference)
+			out.println("- Hierarchical inference by family branch");
+		if (inferenceTimeLimit > 0)
+			out.println("- Inference time limit: " + inferenceTimeLimit + " ms");
+		if (fastPathMaxAtoms > 0)
+			out.println("- In-memory fast path for up to " + fastPathMaxAtoms + " open atoms");
 		if (ignoreRules == null || ignoreRules.isEmpty()) {
 			out.println("- No rules to ignore.");
 		} else {
@@ -263,6 +553,35 @@ public class EtymologyProblemConfig extends PslProblemConfig {
 		logger.displayln("Etymology config");
 		logger.displayln("- Forms (in config!): " + formIds);
 		logger.displayln("- Maximum concept distance: " + maxSemEdgeDist);
+		logger.displayln("- Similarity threads: " + (similarityThreads == 0 ? "all" : similarityThreads));
+		logger.displayln("- Similarity cache size: " + similarityCacheSize
+				+ (similarityCacheFile == null ? "" : " (file: " + similarityCacheFile + ")"));
+		if (similarityMatrixFile != null)
+			logger.displayln("- Similarity matrix: " + similarityMatrixFile);
+		if (fsimTopK > 0 || fsimMinSimilarity > 0.0)
+			logger.displayln("- Fsim candidates: top " + (fsimTopK > 0 ? fsimTopK : "all")
+					+ " per form, minimum similarity " + fsimMinSimilarity);
+		if (canonicalFsim)
+			logger.displayln("- Fsim stored once per unordered pair");
+		logger.displayln("- Language closure cache size: " + languageClosureCacheSize);
+		if (incrementalIdeaGeneration)
+			logger.displayln("- Incremental idea generation");
+		if (warmStart)
+			logger.displayln("- Warm start from earlier beliefs");
+		if (groundingBudget > 0)
+			logger.displayln("- Grounding budget: " + groundingBudget + " ground rules (if exceeded: "
+					+ groundingBudgetPolicy + ")");
+		if (decomposeComponents)
+			logger.displayln("- Independent components solved in parallel (threads: "
+					+ (componentThreads == 0 ? "all" : componentThreads) + ")");
+		if (partitionHomologueSets)
+			logger.displayln("- One problem per homologue set");
+		if (hierarchicalInference)
+			logger.displayln("- Hierarchical inference by family branch");
+		if (inferenceTimeLimit > 0)
+			logger.displayln("- Inference time limit: " + inferenceTimeLimit + " ms");
+		if (fastPathMaxAtoms > 0)
+			logger.displayln("- In-memory fast path for up to " + fastPathMaxAtoms + " open atoms");
 		if (ignoreRules == null || ignoreRules.isEmpty()) {
 			logger.displayln("- No rules to ignore.");
 		} else {
@@ -345,6 +664,149 @@ public class EtymologyProblemConfig extends PslProblemConfig {
 		} catch (JsonProcessingException e) {
 			System.err.println("No persistenceThreshold given. (Using default.)");
 		}
+		try {
+			Integer similarityThreads = mapper.treeToValue(rootNode.path("similarityThreads"), Integer.class);
+			if (similarityThreads != null)
+				setSimilarityThreads(similarityThreads);
+		} catch (JsonProcessingException e) {
+			System.err.println("No similarityThreads given. (Using default.)");
+		}
+		try {
+			Integer similarityCacheSize = mapper.treeToValue(rootNode.path("similarityCacheSize"), Integer.class);
+			if (similarityCacheSize != null)
+				setSimilarityCacheSize(similarityCacheSize);
+		} catch (JsonProcessingException e) {
+			System.err.println("No similarityCacheSize given. (Using default.)");
+		}
+		try {
+			String similarityCacheFile = mapper.treeToValue(rootNode.path("similarityCacheFile"), String.class);
+			if (similarityCacheFile != null)
+				setSimilarityCacheFile(similarityCacheFile);
+		} catch (JsonProcessingException e) {
+			System.err.println("No similarityCacheFile given. (Not using one.)");
+		}
+		try {
+			String corrModelVersion = mapper.treeToValue(rootNode.path("corrModelVersion"), String.class);
+			if (corrModelVersion != null)
+				setCorrModelVersion(corrModelVersion);
+		} catch (JsonProcessingException e) {
+			System.err.println("No corrModelVersion given.");
+		}
+		try {
+			String similarityMatrixFile = mapper.treeToValue(rootNode.path("similarityMatrixFile"), String.class);
+			if (similarityMatrixFile != null)
+				setSimilarityMatrixFile(similarityMatrixFile);
+		} catch (JsonProcessingException e) {
+			System.err.println("No similarityMatrixFile given. (Not using one.)");
+		}
+		try {
+			Integer fsimTopK = mapper.treeToValue(rootNode.path("fsimTopK"), Integer.class);
+			if (fsimTopK != null)
+				setFsimTopK(fsimTopK);
+		} catch (JsonProcessingException e) {
+			System.err.println("No fsimTopK given. (Using default.)");
+		}
+		try {
+			Double fsimMinSimilarity = mapper.treeToValue(rootNode.path("fsimMinSimilarity"), Double.class);
+			if (fsimMinSimilarity != null)
+				setFsimMinSimilarity(fsimMinSimilarity);
+		} catch (JsonProcessingException e) {
+			System.err.println("No fsimMinSimilarity given. (Using default.)");
+		}
+		try {
+			Boolean canonicalFsim = mapper.treeToValue(rootNode.path("canonicalFsim"), Boolean.class);
+			if (canonicalFsim != null)
+				setCanonicalFsim(canonicalFsim);
+		} catch (JsonProcessingException e) {
+			System.err.println("No value for canonicalFsim given. (Using default.)");
+		}
+		try {
+			Integer languageClosureCacheSize = mapper.treeToValue(rootNode.path("languageClosureCacheSize"),
+					Integer.class);
+			if (languageClosureCacheSize != null)
+				setLanguageClosureCacheSize(languageClosureCacheSize);
+		} catch (JsonProcessingException e) {
+			System.err.println("No languageClosureCacheSize given. (Using default.)");
+		}
+		try {
+			Boolean incrementalIdeaGeneration = mapper.treeToValue(rootNode.path("incrementalIdeaGeneration"),
+					Boolean.class);
+			if (incrementalIdeaGeneration != null)
+				setIncrementalIdeaGeneration(incrementalIdeaGeneration);
+		} catch (JsonProcessingException e) {
+			System.err.println("No incrementalIdeaGeneration given. (Using default.)");
+		}
+		try {
+			Boolean warmStart = mapper.treeToValue(rootNode.path("warmStart"), Boolean.class);
+			if (warmStart != null)
+				setWarmStart(warmStart);
+		} catch (JsonProcessingException e) {
+			System.err.println("No warmStart given. (Using default.)");
+		}
+		try {
+			Long groundingBudget = mapper.treeToValue(rootNode.path("groundingBudget"), Long.class);
+			if (groundingBudget != null)
+				setGroundingBudget(groundingBudget);
+		} catch (JsonProcessingException e) {
+			System.err.println("No groundingBudget given. (Using default.)");
+		}
+		try {
+			String groundingBudgetPolicy = mapper.treeToValue(rootNode.path("groundingBudgetPolicy"),
+					String.class);
+			if (groundingBudgetPolicy != null)
+				setGroundingBudgetPolicy(groundingBudgetPolicy);
+		} catch (JsonProcessingException e) {
+			System.err.println("No groundingBudgetPolicy given. (Using default.)");
+		}
+		try {
+			Boolean decomposeComponents = mapper.treeToValue(rootNode.path("decomposeComponents"), Boolean.class);
+			if (decomposeComponents != null)
+				setDecomposeComponents(decomposeComponents);
+		} catch (JsonProcessingException e) {
+			System.err.println("No decomposeComponents given. (Using default.)");
+		}
+		try {
+			Integer componentThreads = mapper.treeToValue(rootNode.path("componentThreads"), Integer.class);
+			if (componentThreads != null)
+				setComponentThreads(componentThreads);
+		} catch (JsonProcessingException e) {
+			System.err.println("No componentThreads given. (Using default.)");
+		}
+		try {
+			Boolean partitionHomologueSets = mapper.treeToValue(rootNode.path("partitionHomologueSets"), Boolean.class);
+			if (partitionHomologueSets != null)
+				setPartitionHomologueSets(partitionHomologueSets);
+		} catch (JsonProcessingException e) {
+			System.err.println("No partitionHomologueSets given. (Using default.)");
+		}
+		try {
+			Boolean hierarchicalInference = mapper.treeToValue(rootNode.path("hierarchicalInference"), Boolean.class);
+			if (hierarchicalInference != null)
+				setHierarchicalInference(hierarchicalInference);
+		} catch (JsonProcessingException e) {
+			System.err.println("No hierarchicalInference given. (Using default.)");
+		}
+		try {
+			Long inferenceTimeLimit = mapper.treeToValue(rootNode.path("inferenceTimeLimit"), Long.class);
+			if (inferenceTimeLimit != null)
+				setInferenceTimeLimit(inferenceTimeLimit);
+		} catch (JsonProcessingException e) {
+			System.err.println("No inferenceTimeLimit given. (Using default.)");
+		}
+		try {
+			Integer snapshotInterval = mapper.treeToValue(rootNode.path("snapshotInterval"), Integer.class);
+			if (snapshotInterval != null)
+				setSnapshotInterval(snapshotInterval);
+		} catch (JsonProcessingException e) {
+			System.err.println("No snapshotInterval given. (Using default.)");
+		}
+		try {
+			Integer fastPathMaxAtoms = mapper.treeToValue(rootNode.path("fastPathMaxAtoms"), Integer.class);
+			if (fastPathMaxAtoms != null)
+				setFastPathMaxAtoms(fastPathMaxAtoms);
+		} catch (JsonProcessingException e) {
+			System.err.println("No fastPathMaxAtoms given. (Using default.)");
+		}
 
 	}
 
@@ -379,6 +841,28 @@ public class EtymologyProblemConfig extends PslProblemConfig {
 			rootNode.set("persistenceThreshold",
 					(DoubleNode) mapper.readTree(mapper.writeValueAsString(persistenceThreshold)));
 			rootNode.set("maxSemEdgeDist", mapper.readTree(mapper.writeValueAsString(maxSemEdgeDist)));
+			rootNode.set("similarityThreads", mapper.readTree(mapper.writeValueAsString(similarityThreads)));
+			rootNode.set("similarityCacheSize", mapper.readTree(mapper.writeValueAsString(similarityCacheSize)));
+			rootNode.set("similarityCacheFile", mapper.readTree(mapper.writeValueAsString(similarityCacheFile)));
+			rootNode.set("corrModelVersion", mapper.readTree(mapper.writeValueAsString(corrModelVersion)));
+			rootNode.set("similarityMatrixFile", mapper.readTree(mapper.writeValueAsString(similarityMatrixFile)));
+			rootNode.set("fsimTopK", mapper.readTree(mapper.writeValueAsString(fsimTopK)));
+			rootNode.set("fsimMinSimilarity", mapper.readTree(mapper.writeValueAsString(fsimMinSimilarity)));
+			rootNode.set("canonicalFsim", mapper.readTree(mapper.writeValueAsString(canonicalFsim)));
+			rootNode.set("languageClosureCacheSize",
+					mapper.readTree(mapper.writeValueAsString(languageClosureCacheSize)));
+			rootNode.set("incrementalIdeaGeneration",
+					mapper.readTree(mapper.writeValueAsString(incrementalIdeaGeneration)));
+			rootNode.set("warmStart", mapper.readTree(mapper.writeValueAsString(warmStart)));
+			rootNode.set("groundingBudget", mapper.readTree(mapper.writeValueAsString(groundingBudget)));
+			rootNode.set("groundingBudgetPolicy", mapper.readTree(mapper.writeValueAsString(groundingBudgetPolicy)));
+			rootNode.set("decomposeComponents", mapper.readTree(mapper.writeValueAsString(decomposeComponents)));
+			rootNode.set("componentThreads", mapper.readTree(mapper.writeValueAsString(componentThreads)));
+			rootNode.set("partitionHomologueSets", mapper.readTree(mapper.writeValueAsString(partitionHomologueSets)));
+			rootNode.set("hierarchicalInference", mapper.readTree(mapper.writeValueAsString(hierarchicalInference)));
+			rootNode.set("inferenceTimeLimit", mapper.readTree(mapper.writeValueAsString(inferenceTimeLimit)));
+			rootNode.set("snapshotInterval", mapper.readTree(mapper.writeValueAsString(snapshotInterval)));
+			rootNode.set("fastPathMaxAtoms", mapper.readTree(mapper.writeValueAsString(fastPathMaxAtoms)));
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -0,0 +1,414 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.problems;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+// The atom values of an inference result, stored by predicate: the arguments as dense integer IDs (shared across
+// predicates), the values in a double array. The rows of each predicate are sorted by their first argument, so
+// the atoms with a given first argument (e.g. the Einh/Eloa/Eunk atoms of a form) can be found without scanning
+// or parsing atom strings.
+// asMap() is a view with the printed atoms (e.g. Eloa(123, 456)) as keys, for code that expects the usual value
+// map. Its keys are indexed once, when the view is first used, so lookups don't parse them. Atoms that are added
+// through the view are only visible through the view. The view doesn't accept null values (but NaN).
+public class EtymologyResultStore {
+
+    public class Column {
+        private final String pred;
+        private final int arity;
+        // arity entries per row
+        private final int[] args;
+        private final double[] values;
+        // The rows of the atoms that have been removed through the view
+        private final BitSet removed = new BitSet();
+        // The rows with the first argument ID i are firstArgStart[i] (incl.) to firstArgStart[i + 1] (excl.).
+        private final int[] firstArgStart;
+
+        private Column(String pred, int arity, int[] args, double[] values, int[] firstArgStart) {
+            this.pred = pred;
+            this.arity = arity;
+            this.args = args;
+            this.values = values;
+            this.firstArgStart = firstArgStart;
+        }
+
+        public String getPredicate() {
+            return pred;
+        }
+
+        public int size() {
+            return values.length;
+        }
+
+        public int arity() {
+            return arity;
+        }
+
+        public int argId(int row, int argIdx) {
+            return args[row * arity + argIdx];
+        }
+
+        public String arg(int row, int argIdx) {
+            return argNames.get(argId(row, argIdx));
+        }
+
+        public double value(int row) {
+            return values[row];
+        }
+
+        // false if the atom has been removed through the view
+        public boolean contains(int row) {
+            return !removed.get(row);
+        }
+
+        // First row with the given first argument (use with endRow)
+        public int firstRow(String firstArg) {
+            Integer id = argIds.get(firstArg);
+            return id == null || arity == 0 ? 0 : firstArgStart[id];
+        }
+
+        public int endRow(String firstArg) {
+            Integer id = argIds.get(firstArg);
+            return id == null || arity == 0 ? 0 : firstArgStart[id + 1];
+        }
+
+        // -1 if there is no such atom (see contains for atoms that have been removed through the view)
+        public int find(String... atomArgs) {
+            if (atomArgs.length != arity) {
+                return -1;
+            }
+            if (arity == 0) {
+                return values.length > 0 ? 0 : -1;
+            }
+            int[] ids = new int[arity];
+            for (int i = 0; i < arity; i++) {
+                Integer id = argIds.get(atomArgs[i]);
+                if (id == null) {
+                    return -1;
+                }
+                ids[i] = id;
+            }
+            rows:
+            for (int row = firstArgStart[ids[0]]; row < firstArgStart[ids[0] + 1]; row++) {
+                for (int i = 1; i < arity; i++) {
+                    if (args[row * arity + i] != ids[i]) {
+                        continue rows;
+                    }
+                }
+                return row;
+            }
+            return -1;
+        }
+
+        // Printed like the keys of the value map
+        public String print(int row) {
+            StringBuilder sb = new StringBuilder(pred).append('(');
+            for (int i = 0; i < arity; i++) {
+                if (i > 0) sb.append(", ");
+                sb.append(arg(row, i));
+            }
+            return sb.append(')').toString();
+        }
+    }
+
+    private final Map<String, Integer> argIds = new HashMap<>();
+    private final List<String> argNames = new ArrayList<>();
+    private final Map<String, Column> columns = new HashMap<>();
+    private final View view = new View();
+
+    public EtymologyResultStore(Map<String, Double> values) {
+        Map<String, List<String[]>> argsByPred = new HashMap<>();
+        Map<String, List<Double>> valuesByPred = new HashMap<>();
+        for (Map.Entry<String, Double> entry : values.entrySet()) {
+            String atom = entry.getKey();
+            int start = atom.indexOf('(');
+            String argString = atom.substring(start + 1, atom.length() - 1);
+            addAtom(atom.substring(0, start), argString.isEmpty() ? new String[0] : argString.split(", "),
+                    entry.getValue(), argsByPred, valuesByPred);
+        }
+        addColumns(argsByPred, valuesByPred);
+    }
+
+    // The atoms of the problem with their (already parsed) arguments: observed atoms with their values, open atoms
+    // with the values of the solver (0 if the solver hasn't seen them, as in PSL).
+    public EtymologyResultStore(AtomInventory atoms, Map<String, Double> solverValues) {
+        Map<String, List<String[]>> argsByPred = new HashMap<>();
+        Map<String, List<Double>> valuesByPred = new HashMap<>();
+        for (String pred : atoms.getPredicates()) {
+            for (AtomInventory.Entry entry : atoms.getAtoms(pred)) {
+                Double value = entry.value;
+                if (!entry.isObserved()) {
+                    value = solverValues.get(AtomInventory.print(pred, entry.args));
+                    if (value == null) value = 0.0;
+                }
+                addAtom(pred, entry.args, value, argsByPred, valuesByPred);
+            }
+        }
+        addColumns(argsByPred, valuesByPred);
+    }
+
+    private void addAtom(String pred, String[] args, Double value, Map<String, List<String[]>> argsByPred,
+                         Map<String, List<Double>> valuesByPred) {
+        for (String arg : args) {
+            argIds.computeIfAbsent(arg, k -> {
+                argNames.add(k);
+                return argNames.size() - 1;
+            });
+        }
+        argsByPred.computeIfAbsent(pred, k -> new ArrayList<>()).add(args);
+        valuesByPred.computeIfAbsent(pred, k -> new ArrayList<>()).add(value);
+    }
+
+    private void addColumns(Map<String, List<String[]>> argsByPred, Map<String, List<Double>> valuesByPred) {
+        for (String pred : argsByPred.keySet()) {
+            columns.put(pred, toColumn(pred, argsByPred.get(pred), valuesByPred.get(pred)));
+        }
+    }
+
+    // Sorts the rows by their first argument (counting sort over the argument IDs).
+    private Column toColumn(String pred, List<String[]> atomArgs, List<Double> atomValues) {
+        int nRows = atomArgs.size();
+        int arity = atomArgs.get(0).length;
+        int[] firstArgStart = new int[argNames.size() + 1];
+        for (String[] args : atomArgs) {
+            if (args.length != arity) {
+                throw new IllegalArgumentException("Atoms of " + pred + " with different numbers of arguments.");
+            }
+            if (arity > 0) firstArgStart[argIds.get(args[0]) + 1]++;
+        }
+        for (int i = 1; i < firstArgStart.length; i++) {
+            firstArgStart[i] += firstArgStart[i - 1];
+        }
+        int[] next = firstArgStart.clone();
+        int[] args = new int[nRows * arity];
+        double[] values = new double[nRows];
+        for (int r = 0; r < nRows; r++) {
+            String[] rowArgs = atomArgs.get(r);
+            int row = arity == 0 ? r : next[argIds.get(rowArgs[0])]++;
+            for (int i = 0; i < arity; i++) {
+                args[row * arity + i] = argIds.get(rowArgs[i]);
+            }
+            Double value = atomValues.get(r);
+            values[row] = value == null ? Double.NaN : value;
+        }
+        return new Column(pred, arity, args, values, firstArgStart);
+    }
+
+    public Set<String> getPredicates() {
+        return columns.keySet();
+    }
+
+    // null if there are no atoms of this predicate
+    public Column getColumn(String pred) {
+        return columns.get(pred);
+    }
+
+    // NaN if there is no such atom
+    public double get(String pred, String... args) {
+        Column column = columns.get(pred);
+        if (column == null) {
+            return Double.NaN;
+        }
+        int row = column.find(args);
+        return row < 0 || !column.contains(row) ? Double.NaN : column.values[row];
+    }
+
+    public Map<String, Double> asMap() {
+        return view;
+    }
+
+    // ---------------
+    // String-keyed view
+    // ---------------
+
+    private class View extends AbstractMap<String, Double> {
+
+        // Atoms that weren't part of the result
+        private final Map<String, Double> added = new HashMap<>();
+        // Printed atom -> {column, row}, built on first use
+        private volatile Map<String, Object[]> index = null;
+
+        private Map<String, Object[]> getIndex() {
+            Map<String, Object[]> rows = index;
+            if (rows == null) {
+                synchronized (this) {
+                    rows = index;
+                    if (rows == null) {
+                        rows = new HashMap<>();
+                        for (Column column : columns.values()) {
+                            for (int row = 0; row < column.values.length; row++) {
+                                rows.put(column.print(row), new Object[]{column, row});
+                            }
+                        }
+                        index = rows;
+                    }
+                }
+            }
+            return rows;
+        }
+
+        // {column, row} or null
+        private Object[] locate(Object key) {
+            return getIndex().get(key);
+        }
+
+        @Override
+        public Double get(Object key) {
+            Object[] location = locate(key);
+            if (location == null) {
+                return added.get(key);
+            }
+            Column column = (Column) location[0];
+            int row = (int) location[1];
+            return column.contains(row) ? column.values[row] : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            Object[] location = locate(key);
+            if (location == null) {
+                return added.containsKey(key);
+            }
+            return ((Column) location[0]).contains((int) location[1]);
+        }
+
+        @Override
+        public Double put(String key, Double value) {
+            Objects.requireNonNull(value);
+            Object[] location = locate(key);
+            if (location == null) {
+                return added.put(key, value);
+            }
+            Column column = (Column) location[0];
+            int row = (int) location[1];
+            Double old = column.contains(row) ? column.values[row] : null;
+            column.values[row] = value;
+            column.removed.clear(row);
+            return old;
+        }
+
+        @Override
+        public Double remove(Object key) {
+            Object[] location = locate(key);
+            if (location == null) {
+                return added.remove(key);
+            }
+            Column column = (Column) location[0];
+            int row = (int) location[1];
+            Double old = column.contains(row) ? column.values[row] : null;
+            column.removed.set(row);
+            return old;
+        }
+
+        @Override
+        public Set<Entry<String, Double>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Double>> iterator() {
+                    return new EntryIterator(added.entrySet().iterator());
+                }
+
+                @Override
+                public int size() {
+                    int size = added.size();
+                    for (Column column : columns.values()) {
+                        size += column.values.length - column.removed.cardinality();
+                    }
+                    return size;
+                }
+            };
+        }
+    }
+
+    // The rows of all columns (skipping removed ones), then the added atoms
+    private class EntryIterator implements Iterator<Map.Entry<String, Double>> {
+
+        private final Iterator<Column> columnIter = new ArrayList<>(columns.values()).iterator();
+        private final Iterator<Map.Entry<String, Double>> addedIter;
+        private Column column = null;
+        private int row = -1;
+        private Column lastColumn = null;
+        private int lastRow = -1;
+
+        EntryIterator(Iterator<Map.Entry<String, Double>> addedIter) {
+            this.addedIter = addedIter;
+            advance();
+        }
+
+        private void advance() {
+            while (true) {
+                if (column != null) {
+                    for (row++; row < column.values.length; row++) {
+                        if (column.contains(row)) return;
+                    }
+                }
+                if (!columnIter.hasNext()) {
+                    column = null;
+                    return;
+                }
+                column = columnIter.next();
+                row = -1;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return column != null || addedIter.hasNext();
+        }
+
+        @Override
+        public Map.Entry<String, Double> next() {
+            if (column == null) {
+                lastColumn = null;
+                return addedIter.next();
+            }
+            Column entryColumn = column;
+            int entryRow = row;
+            lastColumn = column;
+            lastRow = row;
+            advance();
+            return new AbstractMap.SimpleEntry<>(entryColumn.print(entryRow), entryColumn.values[entryRow]) {
+                @Override
+                public Double setValue(Double value) {
+                    entryColumn.values[entryRow] = Objects.requireNonNull(value);
+                    return super.setValue(value);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            if (lastColumn == null) {
+                addedIter.remove();
+            } else if (lastRow >= 0) {
+                lastColumn.removed.set(lastRow);
+                lastRow = -1;
+            } else {
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.problems;
+
+import de.tuebingen.sfs.eie.components.etymology.talk.rule.*;
+import de.tuebingen.sfs.psl.engine.PslProblem;
+import de.tuebingen.sfs.psl.talk.rule.TalkingRuleOrConstraint;
+import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.model.rule.arithmetic.UnweightedArithmeticRule;
+import org.linqs.psl.model.rule.logical.UnweightedLogicalRule;
+import org.linqs.psl.model.rule.logical.WeightedLogicalRule;
+import org.linqs.psl.parser.ModelLoader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+// The rules of the etymology model for one rule configuration (included rules, weights, Fsim storage),
+// in the order in which they are added to a problem.
+// Rule sets are immutable and shared by all problems with the same configuration. They hold the specifications of the
+// rules (name, weight, rule string, talking rule factory) and the PSL rule objects that the ground rules of the
+// inference refer to (see PslGrounding), which are parsed once per rule set.
+// The talking rules are still created (and parsed by PSL) once per problem when they are registered, since they refer
+// to their problem; they are only used to explain the ground rules in the rule-atom graph.
+public class EtymologyRuleSet {
+
+    private static final int CACHE_SIZE = 64;
+    // Config key -> rule specifications
+    private static final Map<String, EtymologyRuleSet> specsByKey = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, EtymologyRuleSet> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    static final String ELOA_TO_FSIM = "Eloa(X,Y) & Fsim(X, Z) & Y != Z & X != Z -> Fsim(X,Y)";
+    // With canonical Fsim: one variant per argument order of Fsim(X,Z) and Fsim(X,Y)
+    static final String[] ELOA_TO_FSIM_CANONICAL = new String[]{
+            "Eloa(X,Y) & Fsim(X, Z) & Y != Z & X % Z & X % Y -> Fsim(X,Y)",
+            "Eloa(X,Y) & Fsim(Z, X) & Y != Z & Z % X & X % Y -> Fsim(X,Y)",
+            "Eloa(X,Y) & Fsim(X, Z) & Y != Z & X % Z & Y % X -> Fsim(Y,X)",
+            "Eloa(X,Y) & Fsim(Z, X) & Y != Z & Z % X & Y % X -> Fsim(Y,X)"};
+
+    public static class RuleSpec {
+        // As registered with PSL (incl. the variant, if any)
+        public final String name;
+        // NaN for constraints
+        public final double weight;
+        // null for rules without a talking rule class
+        private final Function<PslProblem, TalkingRuleOrConstraint> factory;
+        // The PSL rule, without the weight
+        private final String rule;
+
+        private RuleSpec(String name, double weight, Function<PslProblem, TalkingRuleOrConstraint> factory,
+                         String rule) {
+            this.name = name;
+            this.weight = weight;
+            this.factory = factory;
+            this.rule = rule;
+        }
+
+        void addTo(EtymologyProblem problem) {
+            if (factory == null) {
+                problem.addRule(name, weight + ": " + rule);
+            } else {
+                problem.addRule(factory.apply(problem));
+            }
+        }
+    }
+
+    private final String key;
+    private final List<RuleSpec> rules;
+    // Rule name (incl. the variant) -> PSL rule
+    private final Map<String, Rule> pslRules = new LinkedHashMap<>();
+
+    private EtymologyRuleSet(String key, List<RuleSpec> rules) {
+        this.key = key;
+        this.rules = Collections.unmodifiableList(rules);
+        PslGrounding.declarePredicates();
+        for (RuleSpec rule : rules) {
+            pslRules.put(rule.name, compile(rule));
+        }
+    }
+
+    // The parser names rules after their rule strings, so the rule is rebuilt with the name under which the
+    // talking rule is registered (and the weight of the spec).
+    private static Rule compile(RuleSpec spec) {
+        if (Double.isNaN(spec.weight)) {
+            Rule rule = ModelLoader.loadRule(null, spec.rule);
+            if (rule instanceof UnweightedArithmeticRule) {
+                return new UnweightedArithmeticRule(((UnweightedArithmeticRule) rule).getExpression(), spec.name);
+            }
+            return new UnweightedLogicalRule(((UnweightedLogicalRule) rule).getFormula(), spec.name);
+        }
+        WeightedLogicalRule rule = (WeightedLogicalRule) ModelLoader.loadRule(null, "1: " + spec.rule);
+        return new WeightedLogicalRule(rule.getFormula(), spec.weight, false, spec.name);
+    }
+
+    public static EtymologyRuleSet forConfig(EtymologyProblemConfig config) {
+        String key = key(config);
+        synchronized (specsByKey) {
+            EtymologyRuleSet ruleSet = specsByKey.get(key);
+            if (ruleSet == null) {
+                ruleSet = build(key, config);
+                specsByKey.put(key, ruleSet);
+            }
+            return ruleSet;
+        }
+    }
+
+    // Everything about the config that affects the rules
+    private static String key(EtymologyProblemConfig config) {
+        Map<String, Double> weights = new TreeMap<>();
+        TreeSet<String> excluded = new TreeSet<>();
+        for (String rule : EtymologyProblem.RULES) {
+            if (config.include(rule)) {
+                weights.put(rule, EtymologyProblem.ruleWeight(config, rule));
+            } else {
+                excluded.add(rule);
+            }
+        }
+        return (config.isCanonicalFsim() ? "canonical " : "") + weights + " -" + excluded;
+    }
+
+    // Whether Fsim(form1, form2) is the canonical argument order, i.e. whether (form1 % form2) holds in PSL.
+    // PSL compares the constants with their own ordering. Form arguments are string IDs (hypothetical forms are not
+    // numbers), so this is the lexicographic order of the printed forms ("12" comes before "9"), not the numeric
+    // order of the form IDs. Everything that stores or grounds canonical Fsim atoms has to use this method.
+    public static boolean inCanonicalOrder(String form1, String form2) {
+        return form1.compareTo(form2) < 0;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public List<RuleSpec> getRules() {
+        return rules;
+    }
+
+    // null if the rule set doesn't contain the rule
+    // name: as registered with PSL (incl. the variant, see LinearGroundRule.pslRule)
+    public Rule getPslRule(String name) {
+        return pslRules.get(name);
+    }
+
+    private static EtymologyRuleSet build(String key, EtymologyProblemConfig config) {
+        List<RuleSpec> rules = new ArrayList<>();
+        // If Fsim is only stored for X < Y, symmetry is implicit and the Fsim rules come in ordered variants.
+        boolean canonicalFsim = config.isCanonicalFsim();
+
+        // -------------------
+        // CONSTRAINTS
+        if (config.include(EinhOrEloaOrEunkConstraint.NAME))
+            constraint(rules, EinhOrEloaOrEunkConstraint.NAME, EinhOrEloaOrEunkConstraint.RULE,
+                    EinhOrEloaOrEunkConstraint::new);
+        if (config.include(EloaPlusEloaConstraint.NAME))
+            constraint(rules, EloaPlusEloaConstraint.NAME, EloaPlusEloaConstraint.RULE, EloaPlusEloaConstraint::new);
+        if (config.include(FhomDistributionConstraint.NAME))
+            constraint(rules, FhomDistributionConstraint.NAME, FhomDistributionConstraint.RULE,
+                    FhomDistributionConstraint::new);
+        if (!canonicalFsim && config.include(FsimSymmetryConstraint.NAME))
+            constraint(rules, FsimSymmetryConstraint.NAME, FsimSymmetryConstraint.RULE, FsimSymmetryConstraint::new);
+        if (config.include(FsimTransitivityConstraint.NAME)) {
+            if (canonicalFsim) {
+                for (int i = 0; i < FsimTransitivityConstraint.nCanonicalVariants(); i++) {
+                    int variant = i;
+                    constraint(rules, FsimTransitivityConstraint.NAME + "Canonical" + (i + 1),
+                            FsimTransitivityConstraint.ruleFor(i),
+                            problem -> new FsimTransitivityConstraint(problem, variant));
+                }
+            } else {
+                constraint(rules, FsimTransitivityConstraint.NAME, FsimTransitivityConstraint.ruleFor(-1),
+                        FsimTransitivityConstraint::new);
+            }
+        }
+        //A loanword relation implies that the donor and the recipient form must be from the same homologue set.
+        constraint(rules, EetyToFhomConstraint.NAME.formatted("Eloa"), EetyToFhomConstraint.RULE.formatted("Eloa"),
+                problem -> new EetyToFhomConstraint("Eloa", problem));
+        //An inheritance relation implies that the two forms must be from the same homologue set.
+        constraint(rules, EetyToFhomConstraint.NAME.formatted("Einh"), EetyToFhomConstraint.RULE.formatted("Einh"),
+                problem -> new EetyToFhomConstraint("Einh", problem));
+
+        // -------------------
+        // PRIORS
+
+        // Biases against borrowing and against unknown etymologies
+        if (config.include(EunkPriorRule.NAME))
+            weighted(rules, config, EunkPriorRule.NAME, EunkPriorRule.RULE, EunkPriorRule::new);
+        if (config.include(EloaPriorRule.NAME))
+            weighted(rules, config, EloaPriorRule.NAME, EloaPriorRule.RULE, EloaPriorRule::new);
+
+        // -------------------
+        // "REGULAR" WEIGHTED RULES
+
+        // If two forms are inherited from the same form, they should be similar:
+        // (With canonical Fsim, this and FsimToFsim ground each pair once, see EtymologyProblem.groundedRuleWeight.)
+        if (config.include(EinhToFsimRule.NAME)) {
+            double weight = EtymologyProblem.groundedRuleWeight(config, EinhToFsimRule.NAME);
+            rules.add(new RuleSpec(EinhToFsimRule.NAME, weight,
+                    problem -> new EinhToFsimRule(problem, weight, canonicalFsim),
+                    EinhToFsimRule.ruleFor(canonicalFsim)));
+        }
+        // If two forms are similar and inherited from different sources, those source
+        // words should be similar to one another too.
+        if (config.include(FsimToFsimRule.NAME)) {
+            double weight = EtymologyProblem.groundedRuleWeight(config, FsimToFsimRule.NAME);
+            if (canonicalFsim) {
+                for (int i = 0; i < FsimToFsimRule.nCanonicalVariants(); i++) {
+                    int variant = i;
+                    rules.add(new RuleSpec(FsimToFsimRule.NAME + "Canonical" + (i + 1), weight,
+                            problem -> new FsimToFsimRule(problem, weight, variant), FsimToFsimRule.ruleFor(i)));
+                }
+            } else {
+                weighted(rules, config, FsimToFsimRule.NAME, FsimToFsimRule.ruleFor(-1), FsimToFsimRule::new);
+            }
+        }
+
+        //A borrowed form should be more similar to its donor than to any other word.
+        // TODO proper class w/ verbalization
+        if (config.include("EloaToFsim")) {
+            double weight = EtymologyProblem.ruleWeight(config, "EloaToFsim");
+            if (canonicalFsim) {
+                for (int i = 0; i < ELOA_TO_FSIM_CANONICAL.length; i++) {
+                    plain(rules, "EloaToFsimRelation" + (i + 1), weight, ELOA_TO_FSIM_CANONICAL[i]);
+                }
+            } else {
+                plain(rules, "EloaToFsimRelation", weight, ELOA_TO_FSIM);
+            }
+        }
+
+        // Propagating evidence along unary branches, with negative evidence being weaker
+        if (config.include(FhomChildToParentRule.NAME))
+            weighted(rules, config, FhomChildToParentRule.NAME, FhomChildToParentRule.RULE,
+                    FhomChildToParentRule::new);
+        if (config.include(FhomParentToChildRule.NAME))
+            weighted(rules, config, FhomParentToChildRule.NAME, FhomParentToChildRule.RULE,
+                    FhomParentToChildRule::new);
+
+        // If both parent and child share the same homologue set, that provides some evidence of inheritance
+        if (config.include(FhomToEinhRule.NAME))
+            weighted(rules, config, FhomToEinhRule.NAME, FhomToEinhRule.RULE, FhomToEinhRule::new);
+        // If there is a doubt about the reconstructability of a homologue set in the parent, an available
+        // loanword etymology becomes much more likely
+        if (config.include(FhomToEloaRule.NAME))
+            weighted(rules, config, FhomToEloaRule.NAME, FhomToEloaRule.RULE, FhomToEloaRule::new);
+
+        // -------------------
+        // Experimental rules:
+
+        // If two forms are similar and might be inherited from a common source, it's
+        // likely that they really were.
+        //addRule("FsimToEinh", "1: Fsim(X,Y) & Xinh(X,Z) & Xinh(Y,Z) & (X != Y) -> Einh(X,Z)");
+        //If a borrowing relation between two forms is possible and they are quite similar, this makes a borrowing likely.
+        //addRule("FsimToEloa", "2: Fsim(X,Y) & Xloa(X,Y) -> Eloa(X,Y)");
+
+        // If a word is more similar to a word in a contact language than to its
+        // reconstructed ancestor, that makes it more likely to be a loan:
+        //addRule("EloaAndFsim", "1: Xloa(X,W) + Eloa(X,W) >= Xinh(X,Z) + Fsim(X,W) - Fsim(X,Z)");
+
+        //An inherited form should be more similar to its immediate ancestor than to any other word.
+        //addRule("EinhToFsimRelation", "1: Einh(X,Y) & Fsim(X, Z) & X != Z & Y != Z -> Fsim(X,Y)");
+
+        // Sister forms should be less similar than either is to their common parent
+        // form:
+        //addRule("FsimFamily", "1: (X != Y) + Xinh(X,Z) + Xinh(Y,Z) + Fsim(X,Y) <= 3 + Fsim(X,Z)");
+        // The distance between two sister words must not exceed the sum of distances to
+        // the common ancestor, reusing the grounding atoms to create the constant 2:
+        //addRule("FsimTriangle", "1: (X != Y) + Xinh(X,Z) + Xinh(Y,Z) - Fsim(X,Z) - Fsim(Y,Z) >= 2 - Fsim(X,Y)");
+        // Smaller tree distances -> higher similarity
+        //addRule("XdstToFsim", "1: Xsth(D1,D2) & Xdst(X,Y,D1) & Xdst(X,Z,D2) & Fhom(X,H) & Fhom(Y,H) & Fhom(Z,H) & Fsim(X,Z) -> Fsim(X,Y)");
+        // We need to further push up low-tree-distance similarities:
+        //addRule("XdstOneToFsim", "0.3: Xdst(X,Y,'1') & Fhom(X,H,C) & Fhom(Y,H,C) -> Fsim(X,Y)");
+
+        // Every pair of sister languages in which a homologue set is reconstructed or
+        // attested makes it more likely to have existed in the common parent language:
+        //addRule("FhomReconstruction", "1: Fhom(X,H) & Fhom(Y,H) & Xinh(X,Z) & Xinh(Y,Z) & (X != Y) -> Fhom(Z,H)");
+
+        // -------------------
+
+        return new EtymologyRuleSet(key, rules);
+    }
+
+    private static void constraint(List<RuleSpec> rules, String name, String rule,
+                                   Function<PslProblem, TalkingRuleOrConstraint> factory) {
+        rules.add(new RuleSpec(name, Double.NaN, factory, rule));
+    }
+
+    private static void weighted(List<RuleSpec> rules, EtymologyProblemConfig config, String name, String rule,
+                                 BiFunction<PslProblem, Double, TalkingRuleOrConstraint> factory) {
+        double weight = EtymologyProblem.ruleWeight(config, name);
+        rules.add(new RuleSpec(name, weight, problem -> factory.apply(problem, weight), rule));
+    }
+
+    private static void plain(List<RuleSpec> rules, String name, double weight, String rule) {
+        rules.add(new RuleSpec(name, weight, null, rule));
+    }
+
+}
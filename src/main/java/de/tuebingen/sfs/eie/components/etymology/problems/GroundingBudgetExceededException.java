@@ -0,0 +1,38 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.problems;
+
+// Thrown instead of running the inference if a problem is estimated to produce more ground rules than allowed.
+public class GroundingBudgetExceededException extends Exception {
+
+    private final long estimate;
+    private final long budget;
+
+    public GroundingBudgetExceededException(long estimate, long budget) {
+        super("Estimated " + estimate + " ground rules, but the budget is " + budget + ".");
+        this.estimate = estimate;
+        this.budget = budget;
+    }
+
+    public long getEstimate() {
+        return estimate;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.problems;
+
+import de.tuebingen.sfs.eie.components.etymology.talk.rule.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+// Estimates how many ground rules each rule of the etymology model will produce for the atoms of a problem,
+// so that oversized problems can be stopped (or downgraded/queued) before PSL starts grounding them.
+// The estimates count the matches of the rule bodies, based on how often each form occurs as an argument
+// of the relevant predicates. They are exact for most rules and upper bounds for the others.
+public class GroundingPlanner {
+
+    public enum Policy {
+        // Refuse to run the inference.
+        REJECT,
+        // Drop optional rules (most expensive first) until the problem fits the budget.
+        DOWNGRADE,
+        // Run the inference, but only one oversized problem at a time.
+        QUEUE
+    }
+
+    // Rules whose absence makes the model less informed, but not inconsistent
+    public static final List<String> OPTIONAL_RULES = List.of(FsimTransitivityConstraint.NAME, FsimToFsimRule.NAME,
+            "EloaToFsim", EinhToFsimRule.NAME, FhomToEloaRule.NAME, FhomChildToParentRule.NAME,
+            FhomParentToChildRule.NAME, FhomToEinhRule.NAME);
+
+    private static final Semaphore oversizedProblems = new Semaphore(1, true);
+
+    // Rule name (as in EtymologyProblem.RULES) -> estimated number of ground rules
+    public static Map<String, Long> estimate(AtomInventory atoms, boolean canonicalFsim) {
+        Map<String, Integer> fsimOut = new HashMap<>();
+        Map<String, Integer> fsimIn = new HashMap<>();
+        long nFsim = 0;
+        long nMutualFsim = 0;
+        for (AtomInventory.Entry fsim : atoms.getAtoms("Fsim")) {
+            if (fsim.args[0].equals(fsim.args[1])) {
+                continue;
+            }
+            nFsim++;
+            fsimOut.merge(fsim.args[0], 1, Integer::sum);
+            fsimIn.merge(fsim.args[1], 1, Integer::sum);
+            if (atoms.contains("Fsim", fsim.args[1], fsim.args[0])) {
+                nMutualFsim++;
+            }
+        }
+        Map<String, Integer> einhOut = countPerArg(atoms, "Einh", 0);
+        Map<String, Integer> einhIn = countPerArg(atoms, "Einh", 1);
+        Map<String, Integer> fhomOut = countPerArg(atoms, "Fhom", 0);
+        Map<String, Integer> xloaOut = countPerArg(atoms, "Xloa", 0);
+
+        Map<String, Long> estimates = new LinkedHashMap<>();
+        estimates.put(EinhOrEloaOrEunkConstraint.NAME, (long) atoms.size("Eunk"));
+        estimates.put(EloaPlusEloaConstraint.NAME, (long) atoms.size("Eloa"));
+        estimates.put(FhomDistributionConstraint.NAME, (long) fhomOut.size());
+        estimates.put(FsimSymmetryConstraint.NAME, canonicalFsim ? 0 : nFsim);
+
+        long transitivity = 0;
+        for (Map.Entry<String, Integer> entry : fsimIn.entrySet()) {
+            long in = entry.getValue();
+            long out = fsimOut.getOrDefault(entry.getKey(), 0);
+            if (canonicalFsim) {
+                // Chains X < Y < Z, plus pairs sharing the smaller or the larger form
+                transitivity += in * out + in * (in - 1) / 2;
+            } else {
+                transitivity += in * out;
+            }
+        }
+        if (canonicalFsim) {
+            for (int out : fsimOut.values()) {
+                transitivity += (long) out * (out - 1) / 2;
+            }
+        } else {
+            // X = Z
+            transitivity -= nMutualFsim;
+        }
+        estimates.put(FsimTransitivityConstraint.NAME, transitivity);
+
+        estimates.put(EetyToFhomConstraint.NAME.formatted("Einh"), sumOverAtoms(atoms, "Einh", 1, fhomOut));
+        estimates.put(EetyToFhomConstraint.NAME.formatted("Eloa"), sumOverAtoms(atoms, "Eloa", 1, fhomOut));
+        estimates.put(EunkPriorRule.NAME, (long) atoms.size("Eunk"));
+        estimates.put(EloaPriorRule.NAME, (long) atoms.size("Eloa"));
+
+        long einhToFsim = 0;
+        for (int children : einhIn.values()) {
+            einhToFsim += (long) children * (children - 1);
+        }
+        estimates.put(EinhToFsimRule.NAME, canonicalFsim ? einhToFsim / 2 : einhToFsim);
+
+        long fsimToFsim = 0;
+        for (AtomInventory.Entry fsim : atoms.getAtoms("Fsim")) {
+            fsimToFsim += (long) einhOut.getOrDefault(fsim.args[0], 0) * einhOut.getOrDefault(fsim.args[1], 0);
+        }
+        estimates.put(FsimToFsimRule.NAME, fsimToFsim);
+
+        long eloaToFsim = 0;
+        for (AtomInventory.Entry eloa : atoms.getAtoms("Eloa")) {
+            String recipient = eloa.args[0];
+            eloaToFsim += canonicalFsim ? fsimOut.getOrDefault(recipient, 0) + fsimIn.getOrDefault(recipient, 0) :
+                    fsimOut.getOrDefault(recipient, 0);
+        }
+        estimates.put("EloaToFsim", eloaToFsim);
+
+        long xinhFhom = sumOverAtoms(atoms, "Xinh", 0, fhomOut);
+        estimates.put(FhomChildToParentRule.NAME, xinhFhom);
+        estimates.put(FhomParentToChildRule.NAME, xinhFhom);
+        estimates.put(FhomToEinhRule.NAME, xinhFhom);
+        long fhomToEloa = 0;
+        for (AtomInventory.Entry xinh : atoms.getAtoms("Xinh")) {
+            fhomToEloa += (long) fhomOut.getOrDefault(xinh.args[0], 0) * xloaOut.getOrDefault(xinh.args[0], 0);
+        }
+        estimates.put(FhomToEloaRule.NAME, fhomToEloa);
+        return estimates;
+    }
+
+    private static Map<String, Integer> countPerArg(AtomInventory atoms, String pred, int argIdx) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (AtomInventory.Entry entry : atoms.getAtoms(pred)) {
+            counts.merge(entry.args[argIdx], 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    // Sum of counts[args[argIdx]] over all atoms of the predicate
+    private static long sumOverAtoms(AtomInventory atoms, String pred, int argIdx, Map<String, Integer> counts) {
+        long sum = 0;
+        for (AtomInventory.Entry entry : atoms.getAtoms(pred)) {
+            sum += counts.getOrDefault(entry.args[argIdx], 0);
+        }
+        return sum;
+    }
+
+    public static long total(Map<String, Long> estimates, EtymologyProblemConfig config) {
+        long total = 0;
+        for (Map.Entry<String, Long> entry : estimates.entrySet()) {
+            if (config.include(entry.getKey())) {
+                total += entry.getValue();
+            }
+        }
+        return total;
+    }
+
+    // The optional rules to drop (most expensive first) to get below the budget, or null if that isn't possible.
+    public static List<String> rulesToDrop(Map<String, Long> estimates, EtymologyProblemConfig config, long budget) {
+        long total = total(estimates, config);
+        List<String> candidates = new ArrayList<>();
+        for (String rule : OPTIONAL_RULES) {
+            if (config.include(rule)) {
+                candidates.add(rule);
+            }
+        }
+        candidates.sort((rule1, rule2) -> Long.compare(estimates.getOrDefault(rule2, 0L),
+                estimates.getOrDefault(rule1, 0L)));
+        List<String> toDrop = new ArrayList<>();
+        for (String rule : candidates) {
+            if (total <= budget) {
+                break;
+            }
+            toDrop.add(rule);
+            total -= estimates.getOrDefault(rule, 0L);
+        }
+        return total <= budget ? toDrop : null;
+    }
+
+    static void waitForOversizedSlot() throws InterruptedException {
+        oversizedProblems.acquire();
+    }
+
+    static void releaseOversizedSlot() {
+        oversizedProblems.release();
+    }
+
+}
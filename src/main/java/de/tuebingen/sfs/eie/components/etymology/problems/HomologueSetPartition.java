@@ -0,0 +1,217 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.problems;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Splits the atoms of a problem into one problem per group of homologue sets. Two sets are in the same group if
+// a form can belong to both (open or positive Fhom atoms), or if forms that can belong to them are connected by
+// open or positive Fsim atoms. Other atoms (observed Fhom atoms of 0, Einh, Eloa, Xinh, ...) don't join the groups.
+// Forms that don't belong to any group go into the first one.
+// Each part gets the atoms about the forms of its group (the atoms whose first argument is one of them), and the
+// Fhom atoms of all forms that these atoms mention. The Fhom atoms for the sets of the other groups are replaced by
+// Fhom(X, REMAINDER) for "none of these sets", which is observed if they all are (with their sum as its value).
+// So the Fhom atoms of a form still form a distribution, and e.g. a form can't inherit from a form of another
+// group unless it may belong to that group too.
+// The parts are recombined by normalizing the Fhom beliefs of each form across the parts and taking the other
+// atoms from the part they belong to. Ground rules over atoms about forms of different groups (e.g. EinhToFsim for
+// sister forms from different groups) are lost, so the result is only exact if no rule connects the groups.
+class HomologueSetPartition {
+
+    // Pegs are integer IDs, so the remainder gets an integer that can't be a peg.
+    static final String REMAINDER = Integer.toString(Integer.MIN_VALUE);
+
+    private final AtomInventory atoms;
+    private final List<String> pegs;
+    // Peg -> index of its group
+    private final Map<String, Integer> groupOfPeg = new HashMap<>();
+    // The pegs of each group
+    private final List<Set<String>> groups = new ArrayList<>();
+    // Form -> index of its group (the first group for forms that don't belong to any)
+    private final Map<String, Integer> groupOfForm = new HashMap<>();
+    // Form -> Fhom atoms of that form
+    private final Map<String, List<AtomInventory.Entry>> fhomByForm;
+
+    HomologueSetPartition(AtomInventory atoms) {
+        this.atoms = atoms;
+        TreeSet<String> pegSet = new TreeSet<>();
+        for (AtomInventory.Entry fhom : atoms.getAtoms("Fhom")) {
+            pegSet.add(fhom.args[1]);
+        }
+        this.pegs = new ArrayList<>(pegSet);
+        this.fhomByForm = atoms.groupBy("Fhom", 0);
+        assignGroups();
+    }
+
+    // Union-find over the forms and the pegs (as "@" + peg)
+    private void assignGroups() {
+        Map<String, String> parent = new HashMap<>();
+        for (String peg : pegs) {
+            parent.put("@" + peg, "@" + peg);
+        }
+        for (AtomInventory.Entry fhom : atoms.getAtoms("Fhom")) {
+            if (!fhom.isObserved() || fhom.value > 0.0) {
+                union(parent, fhom.args[0], "@" + fhom.args[1]);
+            }
+        }
+        for (AtomInventory.Entry fsim : atoms.getAtoms("Fsim")) {
+            if (!fsim.isObserved() || fsim.value > 0.0) {
+                union(parent, fsim.args[0], fsim.args[1]);
+            }
+        }
+        Map<String, Integer> rootToGroup = new HashMap<>();
+        for (String peg : pegs) {
+            int group = rootToGroup.computeIfAbsent(find(parent, "@" + peg), k -> groups.size());
+            if (group == groups.size()) {
+                groups.add(new LinkedHashSet<>());
+            }
+            groups.get(group).add(peg);
+            groupOfPeg.put(peg, group);
+        }
+        for (String node : parent.keySet()) {
+            if (!node.startsWith("@")) {
+                groupOfForm.put(node, rootToGroup.getOrDefault(find(parent, node), 0));
+            }
+        }
+    }
+
+    private static void union(Map<String, String> parent, String node1, String node2) {
+        parent.putIfAbsent(node1, node1);
+        parent.putIfAbsent(node2, node2);
+        parent.put(find(parent, node1), find(parent, node2));
+    }
+
+    private static String find(Map<String, String> parent, String node) {
+        while (!node.equals(parent.get(node))) {
+            String grandparent = parent.get(parent.get(node));
+            parent.put(node, grandparent);
+            node = grandparent;
+        }
+        return node;
+    }
+
+    List<String> getPegs() {
+        return pegs;
+    }
+
+    int getNumberOfParts() {
+        return groups.size();
+    }
+
+    // The pegs of the homologue sets that the part covers
+    Set<String> getPegs(int part) {
+        return groups.get(part);
+    }
+
+    private int groupOf(String form) {
+        return groupOfForm.getOrDefault(form, 0);
+    }
+
+    AtomInventory forPart(int part) {
+        AtomInventory partAtoms = new AtomInventory();
+        Set<String> forms = new LinkedHashSet<>();
+        for (String pred : atoms.getPredicates()) {
+            if (pred.equals("Fhom")) {
+                continue;
+            }
+            for (AtomInventory.Entry entry : atoms.getAtoms(pred)) {
+                if (groupOf(entry.args[0]) == part) {
+                    partAtoms.add(pred, entry.args, entry.value);
+                    forms.addAll(List.of(entry.args));
+                }
+            }
+        }
+        for (Map.Entry<String, List<AtomInventory.Entry>> fhoms : fhomByForm.entrySet()) {
+            String form = fhoms.getKey();
+            if (groupOf(form) != part && !forms.contains(form)) {
+                continue;
+            }
+            double remainder = 0.0;
+            boolean remainderObserved = true;
+            boolean hasRemainder = false;
+            for (AtomInventory.Entry fhom : fhoms.getValue()) {
+                if (groupOfPeg.get(fhom.args[1]) == part) {
+                    partAtoms.add("Fhom", fhom.args, fhom.value);
+                } else {
+                    hasRemainder = true;
+                    remainderObserved &= fhom.isObserved();
+                    if (fhom.isObserved()) remainder += fhom.value;
+                }
+            }
+            if (hasRemainder) {
+                partAtoms.add("Fhom", new String[]{form, REMAINDER}, remainderObserved ? Math.min(1.0, remainder) :
+                        Double.NaN);
+            }
+        }
+        return partAtoms;
+    }
+
+    // The ground rules of a part without the ones over remainder atoms, which aren't atoms of the full problem
+    static List<LinearGroundRule> withoutRemainder(List<LinearGroundRule> groundRules) {
+        String remainderSuffix = ", " + REMAINDER + ")";
+        List<LinearGroundRule> filtered = new ArrayList<>(groundRules.size());
+        for (LinearGroundRule groundRule : groundRules) {
+            boolean hasRemainder = false;
+            for (String atom : groundRule.terms) {
+                hasRemainder |= atom.startsWith("Fhom(") && atom.endsWith(remainderSuffix);
+            }
+            if (!hasRemainder) filtered.add(groundRule);
+        }
+        return filtered;
+    }
+
+    // values: the results for the parts, in the order of the parts
+    Map<String, Double> recombine(List<Map<String, Double>> values) {
+        Map<String, Double> combined = new HashMap<>();
+        for (List<AtomInventory.Entry> fhoms : fhomByForm.values()) {
+            // Each open Fhom atom comes from the part of its homologue set.
+            double sum = 0.0;
+            for (AtomInventory.Entry fhom : fhoms) {
+                String atom = AtomInventory.print("Fhom", fhom.args);
+                sum += fhom.isObserved() ? fhom.value : values.get(groupOfPeg.get(fhom.args[1])).getOrDefault(atom,
+                        0.0);
+            }
+            for (AtomInventory.Entry fhom : fhoms) {
+                String atom = AtomInventory.print("Fhom", fhom.args);
+                if (fhom.isObserved()) {
+                    combined.put(atom, fhom.value);
+                } else {
+                    double value = values.get(groupOfPeg.get(fhom.args[1])).getOrDefault(atom, 0.0);
+                    combined.put(atom, sum > 0.0 ? value / sum : 1.0 / fhoms.size());
+                }
+            }
+        }
+
+        for (String pred : atoms.getPredicates()) {
+            if (pred.equals("Fhom")) {
+                continue;
+            }
+            for (AtomInventory.Entry entry : atoms.getAtoms(pred)) {
+                String atom = AtomInventory.print(pred, entry.args);
+                combined.put(atom, entry.isObserved() ? entry.value :
+                        values.get(groupOf(entry.args[0])).getOrDefault(atom, 0.0));
+            }
+        }
+        return combined;
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.problems;
+
+import java.util.Arrays;
+import java.util.Map;
+
+// A ground rule of the etymology model, reduced to a linear expression over its open atoms:
+// constant + sum(coefficients[i] * value(atoms[i])).
+// Weighted rules (HINGE) contribute weight * max(0, expression) to the objective, constraints require
+// expression <= 0 (LEQ) or expression = 0 (EQ). The values of observed atoms are already part of the constant.
+public class LinearGroundRule {
+
+    public enum Type {HINGE, LEQ, EQ}
+
+    // Rule name as in EtymologyProblem.RULES
+    public final String rule;
+    // The rule (variant) as registered with PSL, see EtymologyRuleSet.RuleSpec
+    public final String pslRule;
+    public final Type type;
+    // NaN for constraints
+    public final double weight;
+    // Printed like the keys of the value map, e.g. Einh(123, 456)
+    public final String[] atoms;
+    public final double[] coefficients;
+    public final double constant;
+    // The observed atoms whose values went into the constant
+    public final String[] observedAtoms;
+    // The rule as it was grounded, before the values of the observed atoms were folded into the constant and
+    // repeated atoms merged: termConstant + sum(termCoefficients[i] * value(terms[i])), over all atoms of the
+    // grounding. This is what PSL's ground rules consist of (see PslGrounding).
+    final String[] terms;
+    final double[] termCoefficients;
+    final double termConstant;
+
+    LinearGroundRule(String rule, String pslRule, Type type, double weight, String[] atoms, double[] coefficients,
+                     double constant, String[] observedAtoms, String[] terms, double[] termCoefficients,
+                     double termConstant) {
+        this.rule = rule;
+        this.pslRule = pslRule;
+        this.type = type;
+        this.weight = weight;
+        this.atoms = atoms;
+        this.coefficients = coefficients;
+        this.constant = constant;
+        this.observedAtoms = observedAtoms;
+        this.terms = terms;
+        this.termCoefficients = termCoefficients;
+        this.termConstant = termConstant;
+    }
+
+    public boolean isConstraint() {
+        return type != Type.HINGE;
+    }
+
+    // Atoms missing from the value map count as 0.
+    public double expression(Map<String, Double> values) {
+        double sum = constant;
+        for (int i = 0; i < atoms.length; i++) {
+            sum += coefficients[i] * values.getOrDefault(atoms[i], 0.0);
+        }
+        return sum;
+    }
+
+    // Weighted distance to satisfaction for rules, amount of violation for constraints
+    public double penalty(Map<String, Double> values) {
+        double expression = expression(values);
+        switch (type) {
+            case HINGE:
+                return weight * Math.max(0.0, expression);
+            case LEQ:
+                return Math.max(0.0, expression);
+            default:
+                return Math.abs(expression);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(rule).append(": ");
+        if (type == Type.HINGE) {
+            sb.append(weight).append(" * max(0, ");
+        }
+        sb.append(constant);
+        for (int i = 0; i < atoms.length; i++) {
+            sb.append(coefficients[i] < 0 ? " - " : " + ").append(Math.abs(coefficients[i])).append(" * ")
+                    .append(atoms[i]);
+        }
+        switch (type) {
+            case HINGE:
+                return sb.append(")").toString();
+            case LEQ:
+                return sb.append(" <= 0").toString();
+            default:
+                return sb.append(" = 0").toString();
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LinearGroundRule other = (LinearGroundRule) o;
+        return rule.equals(other.rule) && type == other.type && Double.compare(weight, other.weight) == 0 &&
+                Double.compare(constant, other.constant) == 0 && Arrays.equals(atoms, other.atoms) &&
+                Arrays.equals(coefficients, other.coefficients);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * rule.hashCode() + Arrays.hashCode(atoms)) + Arrays.hashCode(coefficients);
+    }
+
+}
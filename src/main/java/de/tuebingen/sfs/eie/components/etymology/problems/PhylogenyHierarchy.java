@@ -0,0 +1,175 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.problems;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Splits a problem along the phylogeny. The forms are grouped into branches by the inheritance links (Xinh),
+// i.e. every branch holds the forms of one family under its branch LCA. Each branch can be solved on its own
+// with the atoms that stay inside of it.
+// The atoms that connect different branches (contact links, loanword etymologies and inferred similarities
+// across families) are then handled by a top-level problem over the forms involved in them. In that problem,
+// the branch results are fixed, except for the beliefs about the contact forms themselves, which stay open and
+// start from the branch results.
+class PhylogenyHierarchy {
+
+    private static final Set<String> FORM_PREDICATES = Set.of("Einh", "Eloa", "Eunk", "Fhom");
+    // The links along which the top-level problem includes the neighbours of the contact forms (parents, children,
+    // donors and recipients). Similarity atoms would pull in every form that is compared with a contact form.
+    private static final Set<String> NEIGHBOUR_PREDICATES = Set.of("Xinh", "Xloa");
+
+    private final AtomInventory atoms;
+    // Form -> branch index
+    private final Map<String, Integer> branchOf = new HashMap<>();
+    private final int nBranches;
+
+    PhylogenyHierarchy(AtomInventory atoms) {
+        this.atoms = atoms;
+        // Every form has an Eunk atom.
+        Map<String, String> parent = new LinkedHashMap<>();
+        for (AtomInventory.Entry eunk : atoms.getAtoms("Eunk")) {
+            parent.put(eunk.args[0], eunk.args[0]);
+        }
+        for (AtomInventory.Entry xinh : atoms.getAtoms("Xinh")) {
+            if (parent.containsKey(xinh.args[0]) && parent.containsKey(xinh.args[1])) {
+                parent.put(find(parent, xinh.args[0]), find(parent, xinh.args[1]));
+            }
+        }
+        Map<String, Integer> rootToBranch = new HashMap<>();
+        for (String form : parent.keySet()) {
+            String root = find(parent, form);
+            Integer branch = rootToBranch.get(root);
+            if (branch == null) {
+                branch = rootToBranch.size();
+                rootToBranch.put(root, branch);
+            }
+            branchOf.put(form, branch);
+        }
+        nBranches = rootToBranch.size();
+    }
+
+    private static String find(Map<String, String> parent, String form) {
+        while (!form.equals(parent.get(form))) {
+            String grandparent = parent.get(parent.get(form));
+            parent.put(form, grandparent);
+            form = grandparent;
+        }
+        return form;
+    }
+
+    int getNumberOfBranches() {
+        return nBranches;
+    }
+
+    // The branches of the forms among the atom's arguments (other arguments, like pegs, don't count)
+    private Set<Integer> branches(String[] args) {
+        Set<Integer> branches = new HashSet<>();
+        for (String arg : args) {
+            Integer branch = branchOf.get(arg);
+            if (branch != null) branches.add(branch);
+        }
+        return branches;
+    }
+
+    // Observed similarities between forms from different branches don't need to be revisited.
+    private boolean connectsBranches(String pred, AtomInventory.Entry entry) {
+        return branches(entry.args).size() > 1 && !(pred.equals("Fsim") && entry.isObserved());
+    }
+
+    AtomInventory branch(int branch) {
+        AtomInventory branchAtoms = new AtomInventory();
+        for (String pred : atoms.getPredicates()) {
+            for (AtomInventory.Entry entry : atoms.getAtoms(pred)) {
+                if (branches(entry.args).equals(Set.of(branch))) {
+                    branchAtoms.add(pred, entry.args, entry.value);
+                }
+            }
+        }
+        return branchAtoms;
+    }
+
+    // The forms involved in atoms that connect different branches
+    private Set<String> contactForms() {
+        Set<String> contactForms = new HashSet<>();
+        for (String pred : atoms.getPredicates()) {
+            for (AtomInventory.Entry entry : atoms.getAtoms(pred)) {
+                if (connectsBranches(pred, entry)) {
+                    for (String arg : entry.args) {
+                        if (branchOf.containsKey(arg)) contactForms.add(arg);
+                    }
+                }
+            }
+        }
+        return contactForms;
+    }
+
+    // The top-level problem: the atoms involving the contact forms, plus the atoms among them and their neighbours
+    // in the phylogeny or through contact links (e.g. the parents' Fhom atoms), as context. Branch atoms are
+    // observed with their branch values, except for the etymologies and homologue sets of the contact forms.
+    // initialValues: filled with the branch results for the open atoms (as starting points)
+    // Returns null if no atoms connect the branches.
+    AtomInventory topLevel(Map<String, Double> branchValues, Map<String, Double> initialValues) {
+        Set<String> contactForms = contactForms();
+        if (contactForms.isEmpty()) {
+            return null;
+        }
+        Set<String> topForms = new HashSet<>(contactForms);
+        for (String pred : NEIGHBOUR_PREDICATES) {
+            for (AtomInventory.Entry entry : atoms.getAtoms(pred)) {
+                for (String arg : entry.args) {
+                    if (contactForms.contains(arg)) {
+                        for (String other : entry.args) {
+                            if (branchOf.containsKey(other)) topForms.add(other);
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        AtomInventory topAtoms = new AtomInventory();
+        for (String pred : atoms.getPredicates()) {
+            for (AtomInventory.Entry entry : atoms.getAtoms(pred)) {
+                boolean inTopLevel = true;
+                for (String arg : entry.args) {
+                    if (branchOf.containsKey(arg) && !topForms.contains(arg)) {
+                        inTopLevel = false;
+                        break;
+                    }
+                }
+                if (!inTopLevel) {
+                    continue;
+                }
+                String atom = AtomInventory.print(pred, entry.args);
+                boolean open = !entry.isObserved() && (connectsBranches(pred, entry) ||
+                        (FORM_PREDICATES.contains(pred) && contactForms.contains(entry.args[0])));
+                if (open) {
+                    topAtoms.addTarget(pred, entry.args);
+                    if (branchValues.containsKey(atom)) initialValues.put(atom, branchValues.get(atom));
+                } else {
+                    topAtoms.add(pred, entry.args, entry.isObserved() ? entry.value :
+                            branchValues.getOrDefault(atom, 0.0));
+                }
+            }
+        }
+        return topAtoms;
+    }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.problems;
+
+import org.linqs.psl.grounding.MemoryGroundRuleStore;
+import org.linqs.psl.model.atom.GroundAtom;
+import org.linqs.psl.model.atom.ObservedAtom;
+import org.linqs.psl.model.atom.RandomVariableAtom;
+import org.linqs.psl.model.predicate.StandardPredicate;
+import org.linqs.psl.model.rule.GroundRule;
+import org.linqs.psl.model.rule.Rule;
+import org.linqs.psl.model.rule.arithmetic.UnweightedArithmeticRule;
+import org.linqs.psl.model.rule.arithmetic.UnweightedGroundArithmeticRule;
+import org.linqs.psl.model.rule.logical.UnweightedGroundLogicalRule;
+import org.linqs.psl.model.rule.logical.UnweightedLogicalRule;
+import org.linqs.psl.model.rule.logical.WeightedGroundLogicalRule;
+import org.linqs.psl.model.rule.logical.WeightedLogicalRule;
+import org.linqs.psl.model.term.Constant;
+import org.linqs.psl.model.term.ConstantType;
+import org.linqs.psl.model.term.UniqueStringID;
+import org.linqs.psl.reasoner.admm.ADMMReasoner;
+import org.linqs.psl.reasoner.admm.term.ADMMTermGenerator;
+import org.linqs.psl.reasoner.admm.term.ADMMTermStore;
+import org.linqs.psl.reasoner.function.FunctionComparator;
+import org.linqs.psl.util.Parallel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// The in-memory grounding (see EtymologyGrounder) as PSL ground rules of the rules in an EtymologyRuleSet, for
+// PSL's ADMM reasoner and the rule-atom graph. PSL's own grounding (database queries for every rule) is skipped:
+// the reasoner gets exactly the ground rules that the grounder has produced, including none of the ones it skipped.
+// The atoms are created here, with the values of the value map (open atoms without a value start at 0); after
+// optimize(), the open atoms hold the values of the reasoner.
+public class PslGrounding {
+
+    // The predicates of the rules (name -> arity)
+    private static final Map<String, Integer> PREDICATES = Map.of("Einh", 2, "Eloa", 2, "Eunk", 1, "Fhom", 2,
+            "Fsim", 2, "Xinh", 2, "Xloa", 2);
+
+    // One list per rule, in the order of the rule set
+    private final List<List<GroundRule>> groundRules = new ArrayList<>();
+    private final Map<String, GroundAtom> atoms = new HashMap<>();
+    private final Map<String, RandomVariableAtom> openAtoms = new LinkedHashMap<>();
+
+    public PslGrounding(List<LinearGroundRule> linearGroundRules, AtomInventory inventory, EtymologyRuleSet ruleSet,
+                        Map<String, Double> values) {
+        Map<String, List<GroundRule>> byRule = new LinkedHashMap<>();
+        for (EtymologyRuleSet.RuleSpec rule : ruleSet.getRules()) {
+            byRule.put(rule.name, new ArrayList<>());
+        }
+        for (LinearGroundRule groundRule : linearGroundRules) {
+            Rule rule = ruleSet.getPslRule(groundRule.pslRule);
+            if (rule == null) {
+                throw new IllegalArgumentException("The rule set doesn't contain " + groundRule.pslRule + ".");
+            }
+            GroundAtom[] groundAtoms = new GroundAtom[groundRule.terms.length];
+            for (int i = 0; i < groundAtoms.length; i++) {
+                groundAtoms[i] = atom(groundRule.terms[i], inventory, values);
+            }
+            byRule.get(groundRule.pslRule).add(groundRule(rule, groundRule, groundAtoms));
+        }
+        groundRules.addAll(byRule.values());
+    }
+
+    // The predicates are looked up by name, so the ones that PSL already knows (e.g. from the problem's
+    // declarations) are reused; the others are declared with string IDs as arguments.
+    static synchronized void declarePredicates() {
+        for (Map.Entry<String, Integer> predicate : PREDICATES.entrySet()) {
+            predicate(predicate.getKey(), predicate.getValue());
+        }
+    }
+
+    private static synchronized StandardPredicate predicate(String name, int arity) {
+        StandardPredicate predicate = StandardPredicate.get(name);
+        if (predicate == null) {
+            ConstantType[] types = new ConstantType[arity];
+            Arrays.fill(types, ConstantType.UniqueStringID);
+            predicate = StandardPredicate.get(name, types);
+        }
+        return predicate;
+    }
+
+    private GroundAtom atom(String printedAtom, AtomInventory inventory, Map<String, Double> values) {
+        GroundAtom atom = atoms.get(printedAtom);
+        if (atom != null) {
+            return atom;
+        }
+        AtomInventory.Entry entry = inventory.get(printedAtom);
+        StandardPredicate predicate = predicate(AtomInventory.predicate(printedAtom), entry.args.length);
+        Constant[] args = new Constant[entry.args.length];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = new UniqueStringID(entry.args[i]);
+        }
+        if (entry.isObserved()) {
+            atom = new ObservedAtom(predicate, args, (float) entry.value);
+        } else {
+            RandomVariableAtom openAtom = new RandomVariableAtom(predicate, args,
+                    values.getOrDefault(printedAtom, 0.0).floatValue());
+            openAtoms.put(printedAtom, openAtom);
+            atom = openAtom;
+        }
+        atoms.put(printedAtom, atom);
+        return atom;
+    }
+
+    // Logical rules: PSL keeps the literals of the negated rule (a conjunction, body & ~head), so the body atoms
+    // (positive coefficients) are its positive literals, the head and negated body atoms (negative coefficients)
+    // its negative ones.
+    // Arithmetic rules: termConstant + sum(c * x) <= / = 0 becomes sum(c * x) <= / = -termConstant.
+    private static GroundRule groundRule(Rule rule, LinearGroundRule groundRule, GroundAtom[] groundAtoms) {
+        if (rule instanceof UnweightedArithmeticRule) {
+            float[] coefficients = new float[groundAtoms.length];
+            for (int i = 0; i < coefficients.length; i++) {
+                coefficients[i] = (float) groundRule.termCoefficients[i];
+            }
+            FunctionComparator comparator = groundRule.type == LinearGroundRule.Type.EQ ? FunctionComparator.EQ :
+                    FunctionComparator.LTE;
+            return new UnweightedGroundArithmeticRule((UnweightedArithmeticRule) rule, coefficients, groundAtoms,
+                    comparator, (float) -groundRule.termConstant) {
+            };
+        }
+        List<GroundAtom> posLiterals = new ArrayList<>();
+        List<GroundAtom> negLiterals = new ArrayList<>();
+        short nOpen = 0;
+        for (int i = 0; i < groundAtoms.length; i++) {
+            if (groundRule.termCoefficients[i] > 0) {
+                posLiterals.add(groundAtoms[i]);
+            } else {
+                negLiterals.add(groundAtoms[i]);
+            }
+            if (groundAtoms[i] instanceof RandomVariableAtom) nOpen++;
+        }
+        if (rule instanceof WeightedLogicalRule) {
+            return new WeightedGroundLogicalRule((WeightedLogicalRule) rule, posLiterals, negLiterals, nOpen) {
+            };
+        }
+        return new UnweightedGroundLogicalRule((UnweightedLogicalRule) rule, posLiterals, negLiterals, nOpen) {
+        };
+    }
+
+    public List<List<GroundRule>> getGroundRules() {
+        return groundRules;
+    }
+
+    // Runs PSL's ADMM reasoner on the ground rules, starting from the current values of the open atoms.
+    // Returns the values of the open atoms (printed like the keys of the value map).
+    public Map<String, Double> optimize() {
+        MemoryGroundRuleStore groundRuleStore = new MemoryGroundRuleStore();
+        for (List<GroundRule> groundRulesForRule : groundRules) {
+            for (GroundRule groundRule : groundRulesForRule) {
+                groundRuleStore.addGroundRule(groundRule);
+            }
+        }
+        // Parallel only reads its number of threads in getNumThreads(), which PSL's own grounding calls before the
+        // term generator sets up the thread pool.
+        Parallel.getNumThreads();
+        ADMMTermStore termStore = new ADMMTermStore();
+        new ADMMTermGenerator().generateTerms(groundRuleStore, termStore);
+        ADMMReasoner reasoner = new ADMMReasoner();
+        try {
+            reasoner.optimize(termStore, ADMMReasoner.InitialValue.ATOM, ADMMReasoner.InitialValue.ATOM);
+        } finally {
+            reasoner.close();
+            termStore.close();
+            groundRuleStore.close();
+        }
+        return getValues();
+    }
+
+    // The current values of the open atoms
+    public Map<String, Double> getValues() {
+        Map<String, Double> values = new HashMap<>();
+        for (Map.Entry<String, RandomVariableAtom> atom : openAtoms.entrySet()) {
+            values.put(atom.getKey(), (double) atom.getValue().getValue());
+        }
+        return values;
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.problems;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Learns the weights of the weighted rules from problems with gold values (voted perceptron, as in PSL's
+// weight learning): in every epoch, each training problem is solved with the current weights, and the weight of
+// a rule goes up if the gold values violate its groundings less than the inferred values do, and down otherwise.
+// The learned weights are the average of the weights after each epoch.
+// Every training problem is grounded once (in memory, see EtymologyGrounder), and the problems of an epoch are
+// solved in parallel.
+// The learned weights can be stored in an EtymologyProblemConfig (applyTo) and exported with it.
+public class WeightLearner {
+
+    private static final int DEFAULT_EPOCHS = 25;
+    private static final double DEFAULT_LEARNING_RATE = 1.0;
+
+    // The result of solving a training problem with the weights of an epoch
+    private static class Step {
+        // Rule -> incompatibility of the gold values minus that of the inferred values
+        final Map<String, Double> gradient;
+        // Objective of the gold values minus that of the inferred values (>= 0 if the inference is exact)
+        final double objectiveDifference;
+
+        Step(Map<String, Double> gradient, double objectiveDifference) {
+            this.gradient = gradient;
+            this.objectiveDifference = objectiveDifference;
+        }
+    }
+
+    private static class TrainingProblem {
+        final List<LinearGroundRule> groundRules;
+        final ConsensusAdmmSolver solver;
+        final Map<String, Double> goldValues;
+
+        TrainingProblem(List<LinearGroundRule> groundRules, Map<String, Double> goldValues) {
+            this.groundRules = groundRules;
+            this.solver = new ConsensusAdmmSolver(groundRules);
+            this.goldValues = goldValues;
+            solver.setInitialValues(goldValues);
+        }
+    }
+
+    private final Map<String, Double> weights = new TreeMap<>();
+    // See EtymologyProblem.groundedRuleWeight
+    private final boolean canonicalFsim;
+    private final List<TrainingProblem> problems = new ArrayList<>();
+    // Rule -> number of groundings across all training problems
+    private final Map<String, Integer> nGroundings = new HashMap<>();
+    private int epochs = DEFAULT_EPOCHS;
+    private double learningRate = DEFAULT_LEARNING_RATE;
+    // 0: one per available processor
+    private int nThreads = 0;
+
+    // Starts from the weights in the config (or the default weights).
+    public WeightLearner(EtymologyProblemConfig config) {
+        canonicalFsim = config.isCanonicalFsim();
+        for (String rule : EtymologyProblem.DEFAULT_RULE_WEIGHTS.keySet()) {
+            weights.put(rule, EtymologyProblem.ruleWeight(config, rule));
+        }
+    }
+
+    public void setEpochs(int epochs) {
+        this.epochs = epochs;
+    }
+
+    public void setLearningRate(double learningRate) {
+        this.learningRate = learningRate;
+    }
+
+    public void setThreads(int nThreads) {
+        this.nThreads = nThreads;
+    }
+
+    // goldValues: printed atom (as in the value map) -> gold value. Open atoms without gold values are treated as
+    // latent and take their inferred values.
+    public void addTrainingProblem(EtymologyProblem problem, Map<String, Double> goldValues) {
+        List<LinearGroundRule> groundRules = problem.groundInMemory();
+        for (LinearGroundRule groundRule : groundRules) {
+            if (!groundRule.isConstraint()) {
+                nGroundings.merge(groundRule.rule, 1, Integer::sum);
+            }
+        }
+        problems.add(new TrainingProblem(groundRules, goldValues));
+    }
+
+    public Map<String, Double> learn() throws InterruptedException {
+        int poolSize = nThreads > 0 ? nThreads : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(poolSize, problems.size())));
+        Map<String, Double> weightSums = new HashMap<>();
+        try {
+            for (int epoch = 1; epoch <= epochs; epoch++) {
+                Map<String, Double> epochWeights = new HashMap<>();
+                weights.forEach((rule, weight) -> epochWeights.put(rule,
+                        weight * EtymologyProblem.groundedWeightFactor(canonicalFsim, rule)));
+                List<Future<Step>> futures = new ArrayList<>();
+                for (TrainingProblem problem : problems) {
+                    futures.add(executor.submit(() -> solve(problem, epochWeights)));
+                }
+                Map<String, Double> gradient = new HashMap<>();
+                double objectiveDifference = 0.0;
+                for (Future<Step> future : futures) {
+                    Step step = future.get();
+                    step.gradient.forEach((rule, value) -> gradient.merge(rule,
+                            value * EtymologyProblem.groundedWeightFactor(canonicalFsim, rule), Double::sum));
+                    objectiveDifference += step.objectiveDifference;
+                }
+
+                for (Map.Entry<String, Double> entry : gradient.entrySet()) {
+                    String rule = entry.getKey();
+                    if (!weights.containsKey(rule)) continue;
+                    // Scaled by the number of groundings, so that frequent rules don't take over.
+                    double step = learningRate * entry.getValue() / nGroundings.get(rule);
+                    weights.put(rule, Math.max(0.0, weights.get(rule) - step));
+                }
+                weights.forEach((rule, weight) -> weightSums.merge(rule, weight, Double::sum));
+                if (EtymologyProblem.verbose)
+                    System.err.println("Weight learning, epoch " + epoch + ": objective difference (gold - inferred) "
+                            + objectiveDifference + ", weights " + weights);
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not solve a training problem.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        if (epochs > 0) {
+            weights.replaceAll((rule, weight) -> weightSums.get(rule) / epochs);
+        }
+        return getWeights();
+    }
+
+    // weights: the grounded weights of the epoch
+    private static Step solve(TrainingProblem problem, Map<String, Double> weights) {
+        problem.solver.setWeights(weights);
+        problem.solver.setInitialValues(problem.solver.getValues());
+        Map<String, Double> inferred = problem.solver.solve();
+        Map<String, Double> gold = new HashMap<>(inferred);
+        gold.putAll(problem.goldValues);
+
+        Map<String, Double> gradient = new HashMap<>();
+        double objectiveDifference = 0.0;
+        for (LinearGroundRule groundRule : problem.groundRules) {
+            if (groundRule.isConstraint()) continue;
+            double difference = Math.max(0.0, groundRule.expression(gold))
+                    - Math.max(0.0, groundRule.expression(inferred));
+            gradient.merge(groundRule.rule, difference, Double::sum);
+            objectiveDifference += weights.getOrDefault(groundRule.rule, groundRule.weight) * difference;
+        }
+        return new Step(gradient, objectiveDifference);
+    }
+
+    public Map<String, Double> getWeights() {
+        return new TreeMap<>(weights);
+    }
+
+    public void applyTo(EtymologyProblemConfig config) {
+        for (Map.Entry<String, Double> entry : weights.entrySet()) {
+            config.addRuleWeight(entry.getKey(), entry.getValue());
+        }
+    }
+
+}
@@ -29,7 +29,7 @@ import de.tuebingen.sfs.psl.util.data.Tuple;
 public class EetyToFhomConstraint extends EtinenTalkingLogicalConstraint {
 
     public static final String NAME = "%sToFhom";
-    private static final String RULE = "%s(X,Y) & Fhom(Y,H) -> Fhom(X,H) .";
+    public static final String RULE = "%s(X,Y) & Fhom(Y,H) -> Fhom(X,H) .";
     private static final String VERBALIZATION =
             "When we reconstruct a%s and assign some belief to the homologue status of the %s, " +
                     "we must assign at least as much belief to the %s's inclusion in the same homologue set.";
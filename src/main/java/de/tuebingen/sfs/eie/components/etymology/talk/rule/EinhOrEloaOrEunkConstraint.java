@@ -33,7 +33,7 @@ import java.util.List;
 public class EinhOrEloaOrEunkConstraint extends EtinenTalkingArithmeticConstraint {
 
     public static final String NAME = "EinhOrEloaOrEunk";
-    private static final String RULE = "Einh(X, +Y) + Eloa(X, +Z) + Eunk(X) = 1 .";
+    public static final String RULE = "Einh(X, +Y) + Eloa(X, +Z) + Eunk(X) = 1 .";
     private static final String VERBALIZATION = "The possible explanations for a word's origin must follow a probability distribution.";
 
     // For serialization.
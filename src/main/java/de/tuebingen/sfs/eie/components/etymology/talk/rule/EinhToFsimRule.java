@@ -28,6 +28,8 @@ public class EinhToFsimRule extends EtinenTalkingLogicalRule {
 
     public static final String NAME = "EinhToFsim";
     private static final String RULE = "Einh(X,Z) & Einh(Y,Z) & (X != Y) -> Fsim(X,Y)";
+    // For Fsim stored as Fsim(X,Y) with X < Y only.
+    private static final String CANONICAL_RULE = "Einh(X,Z) & Einh(Y,Z) & (X % Y) -> Fsim(X,Y)";
     private static final String VERBALIZATION = "If two forms are inherited from the same form, they should be similar.";
 
     // For serialization.
@@ -36,7 +38,15 @@ public class EinhToFsimRule extends EtinenTalkingLogicalRule {
     }
 
     public EinhToFsimRule(PslProblem pslProblem, double weight) {
-        super(NAME, weight, RULE, pslProblem, VERBALIZATION);
+        this(pslProblem, weight, false);
+    }
+
+    public EinhToFsimRule(PslProblem pslProblem, double weight, boolean canonicalFsim) {
+        super(NAME, weight, ruleFor(canonicalFsim), pslProblem, VERBALIZATION);
+    }
+
+    public static String ruleFor(boolean canonicalFsim) {
+        return canonicalFsim ? CANONICAL_RULE : RULE;
     }
 
 
@@ -23,7 +23,7 @@ import de.tuebingen.sfs.psl.engine.RuleAtomGraph;
 public class EloaPriorRule extends EtinenTalkingLogicalRule {
 
     public static final String NAME = "EloaPrior";
-    private static final String RULE = "~Eloa(X, Y)";
+    public static final String RULE = "~Eloa(X, Y)";
     private static final String VERBALIZATION = "By default, we do not assume that a word is a loanword.";
 
     // For serialization.
@@ -27,7 +27,7 @@ import de.tuebingen.sfs.psl.util.data.Tuple;
 public class FhomDistributionConstraint extends EtinenTalkingArithmeticConstraint {
 
     public static final String NAME = "FhomDistribution";
-    private static final String RULE = "Fhom(X,+H) = 1.";
+    public static final String RULE = "Fhom(X,+H) = 1.";
     private static final String VERBALIZATION = "Every word must belong to exactly one homologue set.";
 
     // For serialization.
@@ -28,7 +28,7 @@ import de.tuebingen.sfs.psl.util.data.Tuple;
 public class FhomToEinhRule extends EtinenTalkingLogicalRule {
 
     public static final String NAME = "FhomToEinh";
-    private static final String RULE = "Fhom(X,H) & Fhom(Y,H) & Xinh(X,Y) -> Einh(X,Y)";
+    public static final String RULE = "Fhom(X,H) & Fhom(Y,H) & Xinh(X,Y) -> Einh(X,Y)";
     private static final String VERBALIZATION =
             "If the forms in a language and its parent are assigned to the same homologue set, " +
                     "this suggests that the form in the child language was inherited.";
@@ -30,7 +30,7 @@ import de.tuebingen.sfs.psl.util.data.Tuple;
 public class FhomToEloaRule extends EtinenTalkingLogicalRule {
 
     public static final String NAME = "FhomToEloa";
-    private static final String RULE = "Fhom(X,H) & ~Fhom(Y,H) & Xinh(X,Y) & Xloa(X,Z) -> Eloa(X,Z)";
+    public static final String RULE = "Fhom(X,H) & ~Fhom(Y,H) & Xinh(X,Y) & Xloa(X,Z) -> Eloa(X,Z)";
     private static final String VERBALIZATION =
             "If there is any doubt about the reconstructability of a homologue set in the parent, " +
                     "an available loanword etymology becomes much more likely.";
@@ -25,7 +25,7 @@ import de.tuebingen.sfs.psl.util.data.Tuple;
 public class FsimSymmetryConstraint extends EtinenTalkingArithmeticConstraint {
 
     public static final String NAME = "FsimSymmetry";
-    private static final String RULE = "Fsim(X,Y) = Fsim(Y,X) .";
+    public static final String RULE = "Fsim(X,Y) = Fsim(Y,X) .";
     private static final String VERBALIZATION = "Form similarity is symmetric.";
 
     // For serialization.
@@ -29,6 +29,12 @@ public class FsimToFsimRule extends EtinenTalkingLogicalRule {
 
     public static final String NAME = "FsimToFsim";
     private static final String RULE = "Fsim(X,Y) & Einh(X,W) & Einh(Y,Z) & (W != Z) -> Fsim(W,Z)";
+    // For Fsim stored as Fsim(X,Y) with X < Y only: one variant per order of the source forms.
+    // A self-pair Fsim(X,X) would otherwise reach the same consequent through both variants (with W and Z
+    // swapped), i.e. twice with the doubled weight, so the second variant skips it.
+    private static final String[] CANONICAL_RULES = new String[]{
+            "Fsim(X,Y) & Einh(X,W) & Einh(Y,Z) & (W % Z) -> Fsim(W,Z)",
+            "Fsim(X,Y) & Einh(X,W) & Einh(Y,Z) & (Z % W) & (X != Y) -> Fsim(Z,W)"};
     private static final String VERBALIZATION = "If two forms are similar and inherited from different sources, " +
             "those source words should be similar to one another too.";
 
@@ -41,6 +47,20 @@ public class FsimToFsimRule extends EtinenTalkingLogicalRule {
         super(NAME, weight, RULE, pslProblem, VERBALIZATION);
     }
 
+    public FsimToFsimRule(PslProblem pslProblem, double weight, int canonicalVariant) {
+        super(NAME + "Canonical" + (canonicalVariant + 1), weight, CANONICAL_RULES[canonicalVariant], pslProblem,
+                VERBALIZATION);
+    }
+
+    public static int nCanonicalVariants() {
+        return CANONICAL_RULES.length;
+    }
+
+    // The PSL rule for the variant (-1: the regular rule)
+    public static String ruleFor(int canonicalVariant) {
+        return canonicalVariant < 0 ? RULE : CANONICAL_RULES[canonicalVariant];
+    }
+
 
     @Override
     public String generateExplanation(EtinenConstantRenderer renderer, String groundingName, String contextAtom,
@@ -151,6 +171,12 @@ public class FsimToFsimRule extends EtinenTalkingLogicalRule {
         }
 
         // antecedent, 'why not higher?'
+        // The inheritance relation in question, read off the atom itself: in the canonical variants, the order
+        // of the consequent's arguments needn't match the order of the antecedents.
+        String[] contextEinhArgs = contextAtom.equals(einh1) ? einh1Args : einh2Args;
+        String child = renderer == null ? contextEinhArgs[0] : renderer.getFormRepresentation(contextEinhArgs[0]);
+        String source = renderer == null ? contextEinhArgs[1] : renderer.getFormRepresentation(contextEinhArgs[1]);
+
 
         if (contextAtom.equals(fsimAnte)) {
             // "Since <X [adverb] is inherited from W> and <Y [adverb] is inherited from Z>
@@ -189,10 +215,10 @@ public class FsimToFsimRule extends EtinenTalkingLogicalRule {
             double maxInh = fsimConsBelief - (fsimAnteBelief + einh2Belief - 2);
             if (maxInh > 1 - RuleAtomGraph.DISSATISFACTION_PRECISION) {
                 sb.append("there are actually no restraints for the inheritance relation between ");
-                sb.append(x).append(" and ").append(w);
+                sb.append(child).append(" and ").append(source);
             } else {
                 sb.append("this makes an inheritance relation between ");
-                sb.append(x).append(" and ").append(w).append(" less likely");
+                sb.append(child).append(" and ").append(source).append(" less likely");
             }
             return sb.append(".").toString();
         }
@@ -208,10 +234,10 @@ public class FsimToFsimRule extends EtinenTalkingLogicalRule {
         double maxInh = fsimConsBelief - (fsimAnteBelief + einh1Belief - 2);
         if (maxInh > 1 - RuleAtomGraph.DISSATISFACTION_PRECISION) {
             sb.append("there are actually no restraints for the inheritance relation between ");
-            sb.append(y).append(" and ").append(z);
+            sb.append(child).append(" and ").append(source);
         } else {
             sb.append("this makes an inheritance relation between ");
-            sb.append(y).append(" and ").append(z).append(" less likely");
+            sb.append(child).append(" and ").append(source).append(" less likely");
         }
         return sb.append(".").toString();
     }
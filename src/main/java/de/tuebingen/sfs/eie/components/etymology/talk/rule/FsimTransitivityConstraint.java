@@ -28,17 +28,49 @@ public class FsimTransitivityConstraint extends EtinenTalkingArithmeticConstrain
 
     public static final String NAME = "FsimTransitivity";
     private static final String RULE = "Fsim(X,Y) & Fsim(Y,Z) & (X != Y) & (X != Z) & (Y != Z) -> Fsim(X,Z) .";
+    // If Fsim is only stored as Fsim(X,Y) with X < Y, the transitivity has to be spelled out for each
+    // of the three possible consequents of a triple X < Y < Z instead.
+    private static final String[] CANONICAL_RULES = new String[]{
+            "Fsim(X,Y) & Fsim(Y,Z) & (X % Y) & (Y % Z) -> Fsim(X,Z) .",
+            "Fsim(X,Z) & Fsim(Y,Z) & (X % Y) & (Y % Z) -> Fsim(X,Y) .",
+            "Fsim(X,Y) & Fsim(X,Z) & (X % Y) & (Y % Z) -> Fsim(Y,Z) ."};
     private static final String VERBALIZATION = "Form similarity is transitive: " +
             "if a form is similar to two other forms, those should also be similar to one another.";
 
+    // -1 for the regular rule, otherwise the index of the canonical variant.
+    private final int canonicalVariant;
+
     // For serialization.
     public FsimTransitivityConstraint(String serializedParameters) {
-        // No idiosyncrasies in this rule, just use default values:
-        super(NAME, RULE, VERBALIZATION);
+        // The only idiosyncrasy is the canonical variant (if any):
+        this(serializedParameters.isEmpty() ? -1 : Integer.parseInt(serializedParameters));
+    }
+
+    private FsimTransitivityConstraint(int canonicalVariant) {
+        super(nameFor(canonicalVariant), ruleFor(canonicalVariant), VERBALIZATION);
+        this.canonicalVariant = canonicalVariant;
     }
 
     public FsimTransitivityConstraint(PslProblem pslProblem) {
-        super(NAME, RULE, pslProblem, VERBALIZATION);
+        this(pslProblem, -1);
+    }
+
+    public FsimTransitivityConstraint(PslProblem pslProblem, int canonicalVariant) {
+        super(nameFor(canonicalVariant), ruleFor(canonicalVariant), pslProblem, VERBALIZATION);
+        this.canonicalVariant = canonicalVariant;
+    }
+
+    public static int nCanonicalVariants() {
+        return CANONICAL_RULES.length;
+    }
+
+    private static String nameFor(int canonicalVariant) {
+        return canonicalVariant < 0 ? NAME : NAME + "Canonical" + (canonicalVariant + 1);
+    }
+
+    // The PSL rule for the variant (-1: the regular rule)
+    public static String ruleFor(int canonicalVariant) {
+        return canonicalVariant < 0 ? RULE : CANONICAL_RULES[canonicalVariant];
     }
 
 
@@ -122,9 +154,14 @@ public class FsimTransitivityConstraint extends EtinenTalkingArithmeticConstrain
             return sb.toString();
         }
 
-        String x = renderer == null ? args[0][0] : renderer.getFormRepresentation(args[0][0]);
-        String y = renderer == null ? args[0][1] : renderer.getFormRepresentation(args[0][1]);
-        String z = renderer == null ? args[1][1] : renderer.getFormRepresentation(args[1][1]);
+        // y is the form shared by the antecedents. (In the canonical variants, the argument order of the atoms
+        // doesn't reflect the roles of the forms.)
+        String yArg = args[0][0].equals(args[1][0]) || args[0][0].equals(args[1][1]) ? args[0][0] : args[0][1];
+        String xArg = args[0][0].equals(yArg) ? args[0][1] : args[0][0];
+        String zArg = args[1][0].equals(yArg) ? args[1][1] : args[1][0];
+        String x = renderer == null ? xArg : renderer.getFormRepresentation(xArg);
+        String y = renderer == null ? yArg : renderer.getFormRepresentation(yArg);
+        String z = renderer == null ? zArg : renderer.getFormRepresentation(zArg);
         sb.append("The similarities ");
         if (contextAtom.equals(antecedent0)) {
             sb.append(" between ").append(x).append(" and ").append(y);
@@ -155,7 +192,13 @@ public class FsimTransitivityConstraint extends EtinenTalkingArithmeticConstrain
 
         sb.append("Since ").append(x).append(" and ").append(z).append(" are ");
         sb.append(BeliefScale.verbalizeBeliefAsSimilarityWithOnly(beliefVals[2]));
-        sb.append(", the similarity between ").append(x).append(" and ").append(y).append(" cannot be ");
+        sb.append(", the similarity between ");
+        if (contextAtom.equals(antecedent0)) {
+            sb.append(x).append(" and ").append(y);
+        } else {
+            sb.append(y).append(" and ").append(z);
+        }
+        sb.append(" cannot be ");
         double maxSim = beliefVals[2] + 1 - beliefVals[contextAtom.equals(antecedent0) ? 1 : 0];
         if (maxSim > 1) {
             maxSim = 1;
@@ -171,6 +214,6 @@ public class FsimTransitivityConstraint extends EtinenTalkingArithmeticConstrain
 
     @Override
     public String getSerializedParameters() {
-        return "";
+        return canonicalVariant < 0 ? "" : Integer.toString(canonicalVariant);
     }
 }
@@ -0,0 +1,478 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.problems;
+
+import de.tuebingen.sfs.eie.components.etymology.talk.rule.*;
+import org.junit.jupiter.api.Test;
+import org.linqs.psl.model.rule.GroundRule;
+import org.linqs.psl.model.rule.UnweightedGroundRule;
+import org.linqs.psl.model.rule.WeightedGroundRule;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Keeps the in-memory grounding (EtymologyGrounder) in sync with the PSL rules of the model:
+// the logical rules are grounded a second time here, straight from the rule strings that are passed to PSL,
+// by trying every substitution of the body atoms (as PSL's grounding queries do). Both groundings have to contain
+// the same ground rules (after dropping the ones that can't be violated, as EtymologyGrounder does).
+// The arithmetic constraints (summation, symmetry) are checked separately on hand-computed groundings.
+// The PSL ground rules that are built from the in-memory grounding (see PslGrounding) have to belong to the rules
+// with the same rule strings and have the same distance to satisfaction.
+public class EtymologyGrounderTest {
+
+    private static final double EPSILON = 1e-9;
+
+    // Forms 1, 2 and 3 are attested (1 and 2 inherited from 10, 3 from 11, 10 and 11 from 20), 2 and 3 may be
+    // loans from each other. The form IDs include 10/11/20 vs. 2/3 so that string and numeric order differ.
+    static AtomInventory fixture(boolean canonicalFsim) {
+        AtomInventory atoms = new AtomInventory();
+        String[][] inheritance = {{"1", "10"}, {"2", "10"}, {"3", "11"}, {"10", "20"}, {"11", "20"}};
+        for (String[] link : inheritance) {
+            atoms.addObservation("Xinh", 1.0, link);
+            atoms.addTarget("Einh", link);
+        }
+        atoms.addObservation("Xloa", 1.0, new String[]{"3", "2"});
+        atoms.addTarget("Eloa", new String[]{"3", "2"});
+        atoms.addObservation("Xloa", 1.0, new String[]{"2", "3"});
+        atoms.addTarget("Eloa", new String[]{"2", "3"});
+        for (String form : new String[]{"1", "2", "3", "10", "11"}) {
+            atoms.addTarget("Eunk", new String[]{form});
+        }
+        atoms.addObservation("Fhom", 1.0, new String[]{"1", "h1"});
+        atoms.addObservation("Fhom", 1.0, new String[]{"2", "h1"});
+        atoms.addObservation("Fhom", 0.0, new String[]{"3", "h1"});
+        atoms.addObservation("Fhom", 1.0, new String[]{"3", "h2"});
+        for (String form : new String[]{"10", "11", "20"}) {
+            atoms.addTarget("Fhom", new String[]{form, "h1"});
+            atoms.addTarget("Fhom", new String[]{form, "h2"});
+        }
+        String[] forms = {"1", "2", "3", "10", "11", "20"};
+        Map<String, Double> observedSims = Map.of("1 2", 0.8, "1 3", 0.3, "2 3", 0.6);
+        for (int i = 0; i < forms.length; i++) {
+            for (int j = i + 1; j < forms.length; j++) {
+                String[][] pairs = {{forms[i], forms[j]}, {forms[j], forms[i]}};
+                for (String[] pair : pairs) {
+                    if (canonicalFsim && pair[0].compareTo(pair[1]) > 0) continue;
+                    Double sim = observedSims.get(forms[i] + " " + forms[j]);
+                    if (sim == null) {
+                        atoms.addTarget("Fsim", pair);
+                    } else {
+                        atoms.addObservation("Fsim", sim, pair);
+                    }
+                }
+            }
+        }
+        return atoms;
+    }
+
+    static EtymologyProblemConfig config(boolean canonicalFsim) {
+        EtymologyProblemConfig config = new EtymologyProblemConfig();
+        config.setCanonicalFsim(canonicalFsim);
+        return config;
+    }
+
+    @Test
+    public void logicalRulesMatchPslRules() {
+        checkLogicalRules(false);
+    }
+
+    @Test
+    public void logicalRulesMatchCanonicalPslRules() {
+        checkLogicalRules(true);
+    }
+
+    private static void checkLogicalRules(boolean canonicalFsim) {
+        AtomInventory atoms = fixture(canonicalFsim);
+        EtymologyProblemConfig config = config(canonicalFsim);
+
+        // Rule name (as in the grounder) -> PSL rule strings (one per variant)
+        Map<String, List<String>> constraints = new TreeMap<>();
+        Map<String, List<String>> weightedRules = new TreeMap<>();
+        List<String> transitivity = new ArrayList<>();
+        if (canonicalFsim) {
+            for (int i = 0; i < FsimTransitivityConstraint.nCanonicalVariants(); i++) {
+                transitivity.add(FsimTransitivityConstraint.ruleFor(i));
+            }
+        } else {
+            transitivity.add(FsimTransitivityConstraint.ruleFor(-1));
+        }
+        constraints.put(FsimTransitivityConstraint.NAME, transitivity);
+        constraints.put("EinhToFhom", List.of(EetyToFhomConstraint.RULE.formatted("Einh")));
+        constraints.put("EloaToFhom", List.of(EetyToFhomConstraint.RULE.formatted("Eloa")));
+        weightedRules.put(EunkPriorRule.NAME, List.of(EunkPriorRule.RULE));
+        weightedRules.put(EloaPriorRule.NAME, List.of(EloaPriorRule.RULE));
+        weightedRules.put(EinhToFsimRule.NAME, List.of(EinhToFsimRule.ruleFor(canonicalFsim)));
+        List<String> fsimToFsim = new ArrayList<>();
+        if (canonicalFsim) {
+            for (int i = 0; i < FsimToFsimRule.nCanonicalVariants(); i++) {
+                fsimToFsim.add(FsimToFsimRule.ruleFor(i));
+            }
+        } else {
+            fsimToFsim.add(FsimToFsimRule.ruleFor(-1));
+        }
+        weightedRules.put(FsimToFsimRule.NAME, fsimToFsim);
+        weightedRules.put("EloaToFsim", canonicalFsim ? List.of(EtymologyRuleSet.ELOA_TO_FSIM_CANONICAL) :
+                List.of(EtymologyRuleSet.ELOA_TO_FSIM));
+        weightedRules.put(FhomChildToParentRule.NAME, List.of(FhomChildToParentRule.RULE));
+        weightedRules.put(FhomParentToChildRule.NAME, List.of(FhomParentToChildRule.RULE));
+        weightedRules.put(FhomToEinhRule.NAME, List.of(FhomToEinhRule.RULE));
+        weightedRules.put(FhomToEloaRule.NAME, List.of(FhomToEloaRule.RULE));
+
+        Map<String, Map<String, Integer>> expected = new TreeMap<>();
+        constraints.forEach((name, rules) -> {
+            for (String rule : rules) {
+                new ReferenceGrounder(atoms, name, rule, Double.NaN).ground(expected);
+            }
+        });
+        weightedRules.forEach((name, rules) -> {
+            double weight = EtymologyProblem.groundedRuleWeight(config, name);
+            for (String rule : rules) {
+                new ReferenceGrounder(atoms, name, rule, weight).ground(expected);
+            }
+        });
+
+        Map<String, Map<String, Integer>> actual = new TreeMap<>();
+        for (LinearGroundRule groundRule : new EtymologyGrounder(atoms, config).ground()) {
+            if (constraints.containsKey(groundRule.rule) || weightedRules.containsKey(groundRule.rule)) {
+                actual.computeIfAbsent(groundRule.rule, k -> new TreeMap<>()).merge(key(groundRule), 1,
+                        Integer::sum);
+            }
+        }
+
+        for (String rule : constraints.keySet()) {
+            assertTrue(expected.containsKey(rule), "The fixture should produce groundings of " + rule);
+        }
+        for (String rule : weightedRules.keySet()) {
+            assertTrue(expected.containsKey(rule), "The fixture should produce groundings of " + rule);
+        }
+        assertEquals(expected.keySet(), actual.keySet());
+        for (String rule : expected.keySet()) {
+            assertEquals(expected.get(rule), actual.get(rule), "Groundings of " + rule);
+        }
+    }
+
+    // Form 1 may be inherited from 10 or 11 and is fully similar to itself: FsimToFsim then puts the same total
+    // weight on the similarity of 10 and 11 with and without canonical Fsim.
+    @Test
+    public void selfPairWeightMatchesCanonical() {
+        Map<String, Double> weights = new TreeMap<>();
+        for (boolean canonicalFsim : new boolean[]{false, true}) {
+            AtomInventory atoms = new AtomInventory();
+            for (String source : new String[]{"10", "11"}) {
+                atoms.addObservation("Xinh", 1.0, new String[]{"1", source});
+                atoms.addTarget("Einh", new String[]{"1", source});
+            }
+            atoms.addObservation("Fsim", 1.0, new String[]{"1", "1"});
+            atoms.addTarget("Fsim", new String[]{"10", "11"});
+            if (!canonicalFsim) atoms.addTarget("Fsim", new String[]{"11", "10"});
+
+            double weight = 0.0;
+            for (LinearGroundRule groundRule : new EtymologyGrounder(atoms, config(canonicalFsim)).ground()) {
+                if (groundRule.rule.equals(FsimToFsimRule.NAME)) weight += groundRule.weight;
+            }
+            weights.put(canonicalFsim ? "canonical" : "symmetric", weight);
+        }
+        assertTrue(weights.get("symmetric") > 0.0, "The fixture should produce groundings of FsimToFsim");
+        assertEquals(weights.get("symmetric"), weights.get("canonical"), EPSILON);
+    }
+
+    @Test
+    public void arithmeticConstraints() {
+        AtomInventory atoms = fixture(false);
+        Map<String, Map<String, Integer>> actual = new TreeMap<>();
+        for (LinearGroundRule groundRule : new EtymologyGrounder(atoms, config(false)).ground()) {
+            actual.computeIfAbsent(groundRule.rule, k -> new TreeMap<>()).merge(key(groundRule), 1, Integer::sum);
+        }
+
+        // Einh(X, +Y) + Eloa(X, +Z) + Eunk(X) = 1 .
+        Map<String, Integer> expected = new TreeMap<>();
+        expected.put(key(LinearGroundRule.Type.EQ, Double.NaN, -1.0, "Einh(1, 10)", 1.0, "Eunk(1)", 1.0), 1);
+        expected.put(key(LinearGroundRule.Type.EQ, Double.NaN, -1.0, "Einh(2, 10)", 1.0, "Eloa(2, 3)", 1.0,
+                "Eunk(2)", 1.0), 1);
+        expected.put(key(LinearGroundRule.Type.EQ, Double.NaN, -1.0, "Einh(3, 11)", 1.0, "Eloa(3, 2)", 1.0,
+                "Eunk(3)", 1.0), 1);
+        expected.put(key(LinearGroundRule.Type.EQ, Double.NaN, -1.0, "Einh(10, 20)", 1.0, "Eunk(10)", 1.0), 1);
+        expected.put(key(LinearGroundRule.Type.EQ, Double.NaN, -1.0, "Einh(11, 20)", 1.0, "Eunk(11)", 1.0), 1);
+        assertEquals(expected, actual.get(EinhOrEloaOrEunkConstraint.NAME));
+
+        // Eloa(X, Y) + Eloa(Y, X) <= 1 .
+        assertEquals(Map.of(key(LinearGroundRule.Type.LEQ, Double.NaN, -1.0, "Eloa(2, 3)", 1.0, "Eloa(3, 2)", 1.0),
+                        1),
+                actual.get(EloaPlusEloaConstraint.NAME));
+
+        // Fhom(X, +H) = 1 . (The observed forms are fully determined.)
+        expected = new TreeMap<>();
+        for (String form : new String[]{"10", "11", "20"}) {
+            expected.put(key(LinearGroundRule.Type.EQ, Double.NaN, -1.0, "Fhom(" + form + ", h1)", 1.0,
+                    "Fhom(" + form + ", h2)", 1.0), 1);
+        }
+        assertEquals(expected, actual.get(FhomDistributionConstraint.NAME));
+
+        // Fsim(X, Y) = Fsim(Y, X) . (Once per unordered pair with at least one open atom.)
+        assertEquals(12, actual.get(FsimSymmetryConstraint.NAME).values().stream().mapToInt(i -> i).sum());
+    }
+
+    @Test
+    public void ignoredRulesAreNotGrounded() {
+        EtymologyProblemConfig config = config(false);
+        config.addRuleToIgnoreList(FsimTransitivityConstraint.NAME);
+        config.addRuleToIgnoreList("EloaToFsim");
+        for (LinearGroundRule groundRule : new EtymologyGrounder(fixture(false), config).ground()) {
+            assertFalse(groundRule.rule.equals(FsimTransitivityConstraint.NAME) ||
+                    groundRule.rule.equals("EloaToFsim"), groundRule.toString());
+        }
+    }
+
+    @Test
+    public void pslGroundRulesMatch() {
+        checkPslGroundRules(false);
+    }
+
+    @Test
+    public void canonicalPslGroundRulesMatch() {
+        checkPslGroundRules(true);
+    }
+
+    private static void checkPslGroundRules(boolean canonicalFsim) {
+        AtomInventory atoms = fixture(canonicalFsim);
+        EtymologyProblemConfig config = config(canonicalFsim);
+        List<LinearGroundRule> groundRules = new EtymologyGrounder(atoms, config).ground();
+        Random random = new Random(42);
+        Map<String, Double> values = new HashMap<>();
+        for (LinearGroundRule groundRule : groundRules) {
+            for (String atom : groundRule.atoms) {
+                values.computeIfAbsent(atom, k -> (double) random.nextFloat());
+            }
+        }
+        PslGrounding pslGrounding = new PslGrounding(groundRules, atoms, EtymologyRuleSet.forConfig(config), values);
+
+        List<GroundRule> pslGroundRules = new ArrayList<>();
+        pslGrounding.getGroundRules().forEach(pslGroundRules::addAll);
+        assertEquals(groundRules.size(), pslGroundRules.size());
+        // The ground rules are grouped by rule, in the order of the rule set.
+        Map<String, List<LinearGroundRule>> byRule = new HashMap<>();
+        for (LinearGroundRule groundRule : groundRules) {
+            byRule.computeIfAbsent(groundRule.pslRule, k -> new ArrayList<>()).add(groundRule);
+        }
+        Map<String, Integer> seen = new HashMap<>();
+        for (GroundRule pslGroundRule : pslGroundRules) {
+            String rule = pslGroundRule.getRule().getName();
+            LinearGroundRule groundRule = byRule.get(rule).get(seen.merge(rule, 1, Integer::sum) - 1);
+            // (PSL's incompatibility doesn't include the weight.)
+            double pslPenalty = pslGroundRule instanceof WeightedGroundRule ?
+                    ((WeightedGroundRule) pslGroundRule).getWeight() *
+                            ((WeightedGroundRule) pslGroundRule).getIncompatibility() :
+                    ((UnweightedGroundRule) pslGroundRule).getInfeasibility();
+            assertEquals(groundRule.penalty(values), pslPenalty, 1e-5, pslGroundRule.toString());
+        }
+    }
+
+    // A ground rule as type, weight and the sum of its (open) atoms with their coefficients plus a constant
+    private static String key(LinearGroundRule groundRule) {
+        Map<String, Double> coefficients = new TreeMap<>();
+        for (int i = 0; i < groundRule.atoms.length; i++) {
+            coefficients.merge(groundRule.atoms[i], groundRule.coefficients[i], Double::sum);
+        }
+        return key(groundRule.type, groundRule.weight, groundRule.constant, coefficients);
+    }
+
+    // atomsAndCoefficients: atom1, coefficient1, atom2, coefficient2, ...
+    private static String key(LinearGroundRule.Type type, double weight, double constant,
+                              Object... atomsAndCoefficients) {
+        Map<String, Double> coefficients = new TreeMap<>();
+        for (int i = 0; i < atomsAndCoefficients.length; i += 2) {
+            coefficients.put((String) atomsAndCoefficients[i], (Double) atomsAndCoefficients[i + 1]);
+        }
+        return key(type, weight, constant, coefficients);
+    }
+
+    private static String key(LinearGroundRule.Type type, double weight, double constant,
+                              Map<String, Double> coefficients) {
+        StringBuilder key = new StringBuilder(type.name());
+        if (type == LinearGroundRule.Type.HINGE) {
+            key.append(String.format(" %.6f", weight));
+        }
+        coefficients.forEach((atom, coefficient) -> {
+            if (Math.abs(coefficient) > EPSILON) key.append(String.format(" %+.6f*%s", coefficient, atom));
+        });
+        return key.append(String.format(" %+.6f", constant == 0.0 ? 0.0 : constant)).toString();
+    }
+
+    // Grounds one logical PSL rule (a conjunction of literals, optionally implying a single atom) over all
+    // substitutions that match the positive body atoms, with the truth values of Lukasiewicz logic:
+    // A & B -> C is violated by max(0, A + B - 1 - C), ~A has the value 1 - A, and missing atoms count as 0.
+    // Rules ending with '.' are hard constraints. (X != Y) and (X % Y) compare the constants as strings, as PSL
+    // does for string IDs.
+    private static class ReferenceGrounder {
+
+        private final AtomInventory atoms;
+        private final String name;
+        private final double weight;
+        private final boolean constraint;
+        private final List<String[]> positiveBody = new ArrayList<>();
+        private final List<String[]> negativeBody = new ArrayList<>();
+        private final List<String[]> guards = new ArrayList<>();
+        // null for rules without an implication (priors: ~A)
+        private String[] head = null;
+        private String[] negatedAtom = null;
+
+        ReferenceGrounder(AtomInventory atoms, String name, String rule, double weight) {
+            this.atoms = atoms;
+            this.name = name;
+            this.weight = weight;
+            rule = rule.trim();
+            this.constraint = rule.endsWith(".");
+            if (constraint) rule = rule.substring(0, rule.length() - 1).trim();
+            if (!rule.contains("->")) {
+                // ~A
+                negatedAtom = parseAtom(rule.substring(1).trim());
+                return;
+            }
+            String[] parts = rule.split("->");
+            head = parseAtom(parts[1].trim());
+            for (String literal : parts[0].split("&")) {
+                literal = literal.trim();
+                if (literal.startsWith("(") && literal.endsWith(")")) {
+                    literal = literal.substring(1, literal.length() - 1).trim();
+                }
+                if (literal.contains("!=")) {
+                    String[] args = literal.split("!=");
+                    guards.add(new String[]{"!=", args[0].trim(), args[1].trim()});
+                } else if (literal.contains("%")) {
+                    String[] args = literal.split("%");
+                    guards.add(new String[]{"%", args[0].trim(), args[1].trim()});
+                } else if (literal.startsWith("~")) {
+                    negativeBody.add(parseAtom(literal.substring(1).trim()));
+                } else {
+                    positiveBody.add(parseAtom(literal));
+                }
+            }
+        }
+
+        // Pred(A, B) -> {Pred, A, B}
+        private static String[] parseAtom(String atom) {
+            String pred = atom.substring(0, atom.indexOf('(')).trim();
+            String[] args = atom.substring(atom.indexOf('(') + 1, atom.lastIndexOf(')')).split(",");
+            String[] parsed = new String[args.length + 1];
+            parsed[0] = pred;
+            for (int i = 0; i < args.length; i++) {
+                parsed[i + 1] = args[i].trim();
+            }
+            return parsed;
+        }
+
+        void ground(Map<String, Map<String, Integer>> groundRules) {
+            if (negatedAtom != null) {
+                for (AtomInventory.Entry entry : atoms.getAtoms(negatedAtom[0])) {
+                    Builder builder = new Builder();
+                    builder.add(1.0, negatedAtom[0], entry.args);
+                    builder.emit(groundRules);
+                }
+                return;
+            }
+            substitute(0, new HashMap<>(), groundRules);
+        }
+
+        private void substitute(int literal, Map<String, String> binding,
+                                Map<String, Map<String, Integer>> groundRules) {
+            if (literal == positiveBody.size()) {
+                emit(binding, groundRules);
+                return;
+            }
+            String[] atom = positiveBody.get(literal);
+            for (AtomInventory.Entry entry : atoms.getAtoms(atom[0])) {
+                Map<String, String> extended = new HashMap<>(binding);
+                boolean matches = true;
+                for (int i = 0; i < entry.args.length && matches; i++) {
+                    String bound = extended.putIfAbsent(atom[i + 1], entry.args[i]);
+                    matches = bound == null || bound.equals(entry.args[i]);
+                }
+                if (matches) {
+                    substitute(literal + 1, extended, groundRules);
+                }
+            }
+        }
+
+        private void emit(Map<String, String> binding, Map<String, Map<String, Integer>> groundRules) {
+            for (String[] guard : guards) {
+                String x = binding.get(guard[1]);
+                String y = binding.get(guard[2]);
+                if (guard[0].equals("!=") ? x.equals(y) : x.compareTo(y) >= 0) {
+                    return;
+                }
+            }
+            // sum(body) - (n - 1) - head
+            Builder builder = new Builder();
+            builder.constant = 1.0;
+            for (String[] atom : positiveBody) {
+                builder.constant -= 1.0;
+                builder.add(1.0, atom[0], args(atom, binding));
+            }
+            for (String[] atom : negativeBody) {
+                builder.add(-1.0, atom[0], args(atom, binding));
+            }
+            builder.add(-1.0, head[0], args(head, binding));
+            builder.emit(groundRules);
+        }
+
+        private static String[] args(String[] atom, Map<String, String> binding) {
+            String[] args = new String[atom.length - 1];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = binding.get(atom[i + 1]);
+            }
+            return args;
+        }
+
+        private class Builder {
+            final Map<String, Double> coefficients = new TreeMap<>();
+            double constant = 0.0;
+
+            void add(double coefficient, String pred, String[] args) {
+                AtomInventory.Entry entry = atoms.get(pred, args);
+                if (entry == null) return;
+                if (entry.isObserved()) {
+                    constant += coefficient * entry.value;
+                } else {
+                    coefficients.merge(AtomInventory.print(pred, args), coefficient, Double::sum);
+                }
+            }
+
+            void emit(Map<String, Map<String, Integer>> groundRules) {
+                coefficients.values().removeIf(coefficient -> Math.abs(coefficient) <= EPSILON);
+                double max = constant;
+                for (double coefficient : coefficients.values()) {
+                    max += Math.max(0.0, coefficient);
+                }
+                if (coefficients.isEmpty() || max <= EPSILON) {
+                    // Can't be violated
+                    return;
+                }
+                LinearGroundRule.Type type = constraint ? LinearGroundRule.Type.LEQ : LinearGroundRule.Type.HINGE;
+                groundRules.computeIfAbsent(name, k -> new TreeMap<>())
+                        .merge(key(type, weight, constant, coefficients), 1, Integer::sum);
+            }
+        }
+    }
+
+}
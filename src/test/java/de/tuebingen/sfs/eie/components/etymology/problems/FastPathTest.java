@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.problems;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The in-memory solver (the fast path for small problems, see fastPathMaxAtoms) has to reach the same values as
+// PSL's reasoner on the same ground rules. Both stop at a tolerance, so the values are compared within
+// CONSISTENCY_TOLERANCE.
+public class FastPathTest {
+
+    // Form 1 is inherited from form 2 or borrowed from form 3. 1 and 3 are attested and belong to different
+    // homologue sets, the set of the unattested form 2 is open.
+    private static AtomInventory fixture() {
+        AtomInventory atoms = new AtomInventory();
+        atoms.addObservation("Xinh", 1.0, new String[]{"1", "2"});
+        atoms.addTarget("Einh", new String[]{"1", "2"});
+        atoms.addObservation("Xloa", 1.0, new String[]{"1", "3"});
+        atoms.addTarget("Eloa", new String[]{"1", "3"});
+        atoms.addTarget("Eunk", new String[]{"1"});
+        atoms.addTarget("Eunk", new String[]{"2"});
+        atoms.addObservation("Fhom", 1.0, new String[]{"1", "h1"});
+        atoms.addObservation("Fhom", 0.0, new String[]{"1", "h2"});
+        atoms.addObservation("Fhom", 0.0, new String[]{"3", "h1"});
+        atoms.addObservation("Fhom", 1.0, new String[]{"3", "h2"});
+        atoms.addTarget("Fhom", new String[]{"2", "h1"});
+        atoms.addTarget("Fhom", new String[]{"2", "h2"});
+        atoms.addObservation("Fsim", 0.7, new String[]{"1", "3"});
+        atoms.addObservation("Fsim", 0.7, new String[]{"3", "1"});
+        String[][] openPairs = {{"1", "2"}, {"2", "1"}, {"2", "3"}, {"3", "2"}};
+        for (String[] pair : openPairs) {
+            atoms.addTarget("Fsim", pair);
+        }
+        return atoms;
+    }
+
+    @Test
+    public void inMemorySolutionMatchesPsl() {
+        AtomInventory atoms = fixture();
+        EtymologyProblemConfig config = new EtymologyProblemConfig();
+        List<LinearGroundRule> groundRules = new EtymologyGrounder(atoms, config).ground();
+
+        Map<String, Double> inMemory = new ConsensusAdmmSolver(groundRules).solve();
+        Map<String, Double> psl = new PslGrounding(groundRules, atoms, EtymologyRuleSet.forConfig(config),
+                new HashMap<>()).optimize();
+
+        int nOpen = 0;
+        for (String pred : atoms.getPredicates()) {
+            for (AtomInventory.Entry entry : atoms.getAtoms(pred)) {
+                if (entry.isObserved()) continue;
+                String atom = AtomInventory.print(pred, entry.args);
+                if (!psl.containsKey(atom)) continue;
+                assertNotNull(inMemory.get(atom), "In-memory value of " + atom);
+                assertEquals(psl.get(atom), inMemory.get(atom), EtymologyProblem.CONSISTENCY_TOLERANCE, atom);
+                nOpen++;
+            }
+        }
+        assertTrue(nOpen > 0, "The fixture should have open atoms");
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018–2022 University of Tübingen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tuebingen.sfs.eie.components.etymology.problems;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The homologue sets of a query are only solved separately if no form can belong to several of them. The results
+// of the parts have to match the ones for the full problem if no rule connects them.
+public class HomologueSetPartitionTest {
+
+    // Forms 1 and 2 (inherited from 10) belong to set 1, forms 3 and 4 (inherited from 11) to set 2.
+    // 3 may be a loan from 1. openCrossFhom: form 10 may also belong to set 2.
+    private static AtomInventory fixture(boolean openCrossFhom) {
+        AtomInventory atoms = new AtomInventory();
+        String[][] inheritance = {{"1", "10"}, {"2", "10"}, {"3", "11"}, {"4", "11"}};
+        for (String[] link : inheritance) {
+            atoms.addObservation("Xinh", 1.0, link);
+            atoms.addTarget("Einh", link);
+        }
+        atoms.addObservation("Xloa", 1.0, new String[]{"3", "1"});
+        atoms.addTarget("Eloa", new String[]{"3", "1"});
+        for (String form : new String[]{"1", "2", "3", "4"}) {
+            atoms.addTarget("Eunk", new String[]{form});
+            boolean inFirstSet = form.equals("1") || form.equals("2");
+            atoms.addObservation("Fhom", inFirstSet ? 1.0 : 0.0, new String[]{form, "1"});
+            atoms.addObservation("Fhom", inFirstSet ? 0.0 : 1.0, new String[]{form, "2"});
+        }
+        atoms.addTarget("Fhom", new String[]{"10", "1"});
+        if (openCrossFhom) {
+            atoms.addTarget("Fhom", new String[]{"10", "2"});
+        } else {
+            atoms.addObservation("Fhom", 0.0, new String[]{"10", "2"});
+        }
+        atoms.addObservation("Fhom", 0.0, new String[]{"11", "1"});
+        atoms.addTarget("Fhom", new String[]{"11", "2"});
+        // Similarities are only open within the sets; the attested forms of different sets aren't similar.
+        List<String> firstSet = List.of("1", "2", "10");
+        Map<String, Double> observedSims = Map.of("1 2", 0.8, "3 4", 0.7);
+        String[] forms = {"1", "2", "3", "4", "10", "11"};
+        for (String form1 : forms) {
+            for (String form2 : forms) {
+                if (form1.equals(form2)) continue;
+                Double sim = observedSims.getOrDefault(form1 + " " + form2, observedSims.get(form2 + " " + form1));
+                if (sim != null) {
+                    atoms.addObservation("Fsim", sim, new String[]{form1, form2});
+                } else if (firstSet.contains(form1) == firstSet.contains(form2)) {
+                    atoms.addTarget("Fsim", new String[]{form1, form2});
+                } else {
+                    atoms.addObservation("Fsim", 0.0, new String[]{form1, form2});
+                }
+            }
+        }
+        return atoms;
+    }
+
+    private static Map<String, Double> solve(AtomInventory atoms) {
+        EtymologyProblemConfig config = new EtymologyProblemConfig();
+        return new ConsensusAdmmSolver(new EtymologyGrounder(atoms, config).ground()).solve();
+    }
+
+    @Test
+    public void independentSetsAreSplit() {
+        AtomInventory atoms = fixture(false);
+        HomologueSetPartition partition = new HomologueSetPartition(atoms);
+        assertEquals(2, partition.getNumberOfParts());
+        assertEquals(Set.of("1"), partition.getPegs(0));
+
+        // The loan etymology of 3 belongs to the second part, which sees form 1 as "none of its sets".
+        AtomInventory secondPart = partition.forPart(1);
+        assertTrue(secondPart.contains("Eloa", "3", "1"));
+        assertFalse(secondPart.contains("Fhom", "1", "1"));
+        assertEquals(1.0, secondPart.get("Fhom", "1", HomologueSetPartition.REMAINDER).value);
+        assertFalse(partition.forPart(0).contains("Eloa", "3", "1"));
+
+        List<Map<String, Double>> partValues = new ArrayList<>();
+        for (int i = 0; i < partition.getNumberOfParts(); i++) {
+            partValues.add(solve(partition.forPart(i)));
+        }
+        Map<String, Double> combined = partition.recombine(partValues);
+        Map<String, Double> full = solve(atoms);
+        for (Map.Entry<String, Double> value : full.entrySet()) {
+            assertEquals(value.getValue(), combined.get(value.getKey()), EtymologyProblem.CONSISTENCY_TOLERANCE,
+                    value.getKey());
+        }
+        assertEquals(1.0, combined.get("Fhom(10, 1)") + combined.get("Fhom(10, 2)"), 1e-9);
+    }
+
+    @Test
+    public void connectedSetsAreNotSplit() {
+        HomologueSetPartition partition = new HomologueSetPartition(fixture(true));
+        assertEquals(2, partition.getPegs().size());
+        assertEquals(1, partition.getNumberOfParts());
+    }
+
+}